@@ -32,6 +32,21 @@ public class MalformedAddressException extends MalformedException {
         this.address = address;
     }
 
+    public MalformedAddressException(String address, Reason reason) {
+        super(reason);
+        this.address = address;
+    }
+
+    public MalformedAddressException(String address, Reason reason, String message) {
+        super(reason, message);
+        this.address = address;
+    }
+
+    public MalformedAddressException(String address, Reason reason, Throwable cause) {
+        super(reason, cause);
+        this.address = address;
+    }
+
     public MalformedAddressException(String address, String message, Throwable cause) {
         super(message, cause);
         this.address = address;
@@ -32,6 +32,21 @@ public class MalformedDomainException extends MalformedException {
         this.domain = domain;
     }
 
+    public MalformedDomainException(String domain, Reason reason) {
+        super(reason);
+        this.domain = domain;
+    }
+
+    public MalformedDomainException(String domain, Reason reason, String message) {
+        super(reason, message);
+        this.domain = domain;
+    }
+
+    public MalformedDomainException(String domain, Reason reason, Throwable cause) {
+        super(reason, cause);
+        this.domain = domain;
+    }
+
     public MalformedDomainException(String domain, String message, Throwable cause) {
         super(message, cause);
         this.domain = domain;
@@ -21,16 +21,83 @@
  */
 package com.jajja.arachne.exceptions;
 
+/**
+ * A failure to parse a host, address, endpoint or URL, for a {@link Reason}.
+ *
+ * Malformed input is expected when parsing input from the wild, which makes
+ * filling in stack traces a needless cost. Stack traces are therefore left out
+ * when the system property <tt>arachne.exceptions.stackless</tt> is
+ * <tt>true</tt>, or after a call to {@link #setStackless(boolean)}.
+ *
+ * @author Martin Korinth <martin.korinth@jajja.com>
+ */
 public class MalformedException extends Exception {
 
     private static final long serialVersionUID = -1L;
 
+    private static volatile boolean stackless = Boolean.getBoolean("arachne.exceptions.stackless");
+
+    private final Reason reason;
+
     public MalformedException(String message) {
-        super(message);
+        this(Reason.UNSPECIFIED, message);
     }
 
     public MalformedException(String message, Throwable cause) {
+        this(Reason.UNSPECIFIED, message, cause);
+    }
+
+    public MalformedException(Reason reason) {
+        this(reason, reason.getMessage());
+    }
+
+    public MalformedException(Reason reason, String message) {
+        super(message);
+        this.reason = reason;
+    }
+
+    public MalformedException(Reason reason, Throwable cause) {
+        this(reason, reason.getMessage(), cause);
+    }
+
+    public MalformedException(Reason reason, String message, Throwable cause) {
         super(message, cause);
+        this.reason = reason;
+    }
+
+    /**
+     * Provides the reason for the failure.
+     *
+     * @return the reason, {@link Reason#UNSPECIFIED} if not specified
+     */
+    public Reason getReason() {
+        return reason;
+    }
+
+    /**
+     * Tells whether stack traces are left out of malformed exceptions.
+     *
+     * @return true if stack traces are left out, false otherwise
+     */
+    public static boolean isStackless() {
+        return stackless;
+    }
+
+    /**
+     * Sets whether stack traces are left out of malformed exceptions created
+     * from now on, overriding the system property
+     * <tt>arachne.exceptions.stackless</tt>.
+     *
+     * @param stackless
+     *            true to leave out stack traces, false to fill them in
+     */
+    public static void setStackless(boolean stackless) {
+        MalformedException.stackless = stackless;
+    }
+
+    @Override
+    public synchronized Throwable fillInStackTrace() {
+        return stackless ? this : super.fillInStackTrace();
     }
 
 }
@@ -32,6 +32,21 @@ public class MalformedUriException extends MalformedException {
         this.url = url;
     }
 
+    public MalformedUriException(String url, Reason reason) {
+        super(reason);
+        this.url = url;
+    }
+
+    public MalformedUriException(String url, Reason reason, String message) {
+        super(reason, message);
+        this.url = url;
+    }
+
+    public MalformedUriException(String url, Reason reason, Throwable cause) {
+        super(reason, cause);
+        this.url = url;
+    }
+
     public MalformedUriException(String url, String message, Throwable cause) {
         super(message, cause);
         this.url = url;
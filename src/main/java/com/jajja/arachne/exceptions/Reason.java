@@ -0,0 +1,116 @@
+/*
+ * Copyright (C) 2013 Jajja Communications AB
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.jajja.arachne.exceptions;
+
+/**
+ * The reasons for which a host, address, endpoint or URL can be malformed,
+ * with the message used when the reason is reported by an exception.
+ *
+ * @author Martin Korinth <martin.korinth@jajja.com>
+ */
+public enum Reason {
+
+    /** A failure without a specified reason. */
+    UNSPECIFIED("Malformed!"),
+
+    /** A domain without characters. */
+    EMPTY_DOMAIN("Empty domain!"),
+    /** A domain of more than 253 characters. */
+    DOMAIN_TOO_LONG("Too many characters in fully qualified domain name!"),
+    /** A domain of more than 127 labels. */
+    TOO_MANY_LABELS("Too many labels in fully qualified domain name!"),
+    /** A domain with a label of more than 63 characters. */
+    LABEL_TOO_LONG("Too many characters in domain name!"),
+    /** A domain with characters other than letters, digits and hyphens, or an empty label. */
+    INVALID_DOMAIN_CHARACTERS("Invalid charcters in domain name!"),
+    /** An international domain that can not be converted to ASCII. */
+    INVALID_INTERNATIONAL_DOMAIN("Invalid international domain name!"),
+
+    /** A host name that is neither an IPv4 nor an IPv6 address. */
+    NOT_ADDRESS("Not an address!"),
+    /** An IPv4 subnet with leading zeros. */
+    ZERO_PADDED_SUBNET("Zero-padded IPv4 address subnet!"),
+    /** An IPv4 subnet above 255. */
+    SUBNET_TOO_LARGE("An IPv4 subnet can not exceed 255!"),
+    /** An IPv4 address of more than four subnets. */
+    TOO_MANY_SUBNETS("Too many subnets for an IPv4 address!"),
+    /** An IPv4 address of fewer than four subnets. */
+    TOO_FEW_SUBNETS("Too few subnets for an IPv4 address!"),
+    /** An IPv4 subnet without digits. */
+    EMPTY_SUBNET("Empty IPv4 address subnet!"),
+    /** An IPv4 address with a zero a-net. */
+    ZERO_LEADING_SUBNET("Zero-leading IPv4 address a-net!"),
+    /** An IPv4 address with characters other than digits and dots. */
+    INVALID_IPV4_CHARACTERS("Illegal characters for an IPv4 address!"),
+    /** An IPv6 address with characters other than hexadecimal digits and colons. */
+    INVALID_IPV6_CHARACTERS("Illegal characters for an IPv6 address!"),
+    /** An IPv6 address of more than 128 bits, or a group of more than four digits. */
+    IPV6_TOO_LARGE("Too large data for an IPv6 adress!"),
+    /** An IPv6 address of less than 128 bits without zero-padding. */
+    IPV6_TOO_SMALL("Too little data for an IPv6 adress!"),
+    /** An IPv6 address zero-padded at more than one point. */
+    MULTIPLE_PADDING("IPv6 adress can only be zero-padded at one point!"),
+    /** An IPv6 group without digits. */
+    EMPTY_GROUP("Empty IPv6 address group!"),
+    /** An address of neither 4 nor 16 bytes. */
+    INVALID_ADDRESS_LENGTH("Neither 4 nor 16 bytes of address!"),
+    /** A range with a prefix length that is not a number. */
+    INVALID_PREFIX("Illegal prefix length for a range!"),
+    /** A range with a prefix length beyond the bits of its address. */
+    PREFIX_TOO_LONG("The prefix length of a range can not exceed the bits of its address!"),
+
+    /** An endpoint with a host that is neither an address nor a domain. */
+    INVALID_HOST("Failed to parse host!"),
+    /** An endpoint with an opening bracket but no closing bracket. */
+    UNMATCHED_BRACKET("Unmatched escape bracket in IPv6 endpoint!"),
+    /** An endpoint with characters between the closing bracket and the colon. */
+    EXPECTED_COLON("Expected colon after IPv6 host-part!"),
+    /** An endpoint with brackets around a host that is not an IPv6 address. */
+    BRACKETED_NON_IPV6("Detected escape brackets for non IPv6 host!"),
+    /** An endpoint with a port that is not a number. */
+    INVALID_PORT("Invalid port number format!"),
+    /** An endpoint with a port outside 1 to 65535. */
+    PORT_OUT_OF_RANGE("Port number out of range!"),
+
+    /** A URL without a valid scheme. */
+    INVALID_SCHEME("invalid scheme"),
+    /** A URL with nothing after the scheme. */
+    MISSING_HOST_OR_PATH("missing host or path"),
+    /** A URL with neither a host nor a path. */
+    NO_HOST_OR_PATH("no host or path");
+
+    private final String message;
+
+    private Reason(String message) {
+        this.message = message;
+    }
+
+    /**
+     * Provides the message reporting the reason.
+     *
+     * @return the message
+     */
+    public String getMessage() {
+        return message;
+    }
+
+}
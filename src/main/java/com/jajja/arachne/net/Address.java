@@ -22,17 +22,25 @@
 package com.jajja.arachne.net;
 
 import com.jajja.arachne.exceptions.MalformedAddressException;
+import com.jajja.arachne.exceptions.Reason;
 
 /**
  * A class for parsing Internet addresses.
  *
+ * An address is held in numeric form, as an int for IPv4 and as two longs for
+ * IPv6, from which the hexadecimal representation is produced when asked for.
+ *
  * @author Martin Korinth <martin.korinth@jajja.com>
  */
-public class Address extends Host {
+public class Address extends Host implements Comparable<Address> {
 
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
     private String hex;
+    private String canonical;
     private String comment;
     private int ipv;
+    private long high;
+    private long low;
 
     /**
      * Creates an address by parsing the string representation, the string literal.
@@ -47,15 +55,232 @@ public class Address extends Host {
         parse();
     }
 
+    private Address(String string, int ipv) throws MalformedAddressException {
+        super(string);
+        if (ipv == 4) {
+            parseIpv4(false);
+        } else {
+            parseIpv6();
+        }
+    }
+
+    private Address(String string, int ipv, long high, long low) {
+        super(string);
+        this.ipv = ipv;
+        this.high = high;
+        this.low = low;
+    }
+
+    /**
+     * Parses an address without throwing exceptions for malformed addresses.
+     *
+     * @param name
+     *            the address name
+     * @return the address, or the reason the name can not be parsed as an
+     *         address
+     */
+    public static ParseResult<Address> tryParse(String name) {
+        int length = name.length();
+        int family = AddressLexer.family(name, 0, length);
+        if (family == 4) {
+            long address = AddressLexer.lexIpv4(name, 0, length, false);
+            if (address < 0) {
+                return ParseResult.invalid(AddressLexer.reason(address));
+            }
+            return ParseResult.valid(new Address(name, 4, 0, address));
+        } else if (family == 6) {
+            long[] bits = new long[2];
+            int end = AddressLexer.lexIpv6(name, 0, length, bits);
+            if (end < 0) {
+                return ParseResult.invalid(AddressLexer.reason(end));
+            }
+            Address address = new Address(name, 6, bits[0], bits[1]);
+            if (end + 1 < length) {
+                address.comment = name.substring(end + 1);
+            }
+            return ParseResult.valid(address);
+        }
+        return ParseResult.invalid(Reason.NOT_ADDRESS);
+    }
+
+    /**
+     * Parses the address of a network, for which an IPv4 address may have a
+     * zero a-net, as in 0.0.0.0/0.
+     *
+     * @param name
+     *            the network address
+     * @return the address
+     * @throws MalformedAddressException
+     *             when the name can not be parsed as an address
+     */
+    static Address network(String name) throws MalformedAddressException {
+        Address address = new Address(name, 6, 0, 0);
+        int family = AddressLexer.family(name, 0, name.length());
+        if (family == 4) {
+            address.parseIpv4(true);
+        } else if (family == 6) {
+            address.parseIpv6();
+        } else {
+            throw new MalformedAddressException(name, Reason.NOT_ADDRESS);
+        }
+        return address;
+    }
+
+    /**
+     * Creates an IPv4 address from its numeric form.
+     *
+     * @param address
+     *            the address as a 32 bit number, e.g. 0x7f000001 for 127.0.0.1
+     * @return the address
+     */
+    public static Address valueOf(int address) {
+        StringBuilder builder = new StringBuilder(15);
+        appendIpv4(builder, address);
+        return new Address(builder.toString(), 4, 0, address & 0xffffffffL);
+    }
+
+    /**
+     * Creates an IPv6 address from its numeric form.
+     *
+     * @param high
+     *            the most significant 64 bits of the address
+     * @param low
+     *            the least significant 64 bits of the address
+     * @return the address
+     */
+    public static Address valueOf(long high, long low) {
+        StringBuilder builder = new StringBuilder(39);
+        appendIpv6(builder, high, low);
+        return new Address(builder.toString(), 6, high, low);
+    }
+
+    /**
+     * Creates an address from its bytes in network order, as provided by
+     * {@link #getBytes()}.
+     *
+     * @param bytes
+     *            4 bytes for an IPv4 address or 16 bytes for an IPv6 address
+     * @return the address
+     * @throws MalformedAddressException
+     *             when the number of bytes is neither 4 nor 16
+     */
+    public static Address valueOf(byte[] bytes) throws MalformedAddressException {
+        if (bytes.length == 4) {
+            return valueOf((int) read(bytes, 0, 4));
+        } else if (bytes.length == 16) {
+            return valueOf(read(bytes, 0, 8), read(bytes, 8, 8));
+        }
+        throw new MalformedAddressException(null, Reason.INVALID_ADDRESS_LENGTH);
+    }
+
     /**
      * Provides the hexadecimal representation parsed from the address.
      *
      * @return the hexadecimal representation
      */
     public String getHex() {
+        String hex = this.hex;
+        if (hex == null) {
+            char[] chars;
+            if (ipv == 4) {
+                chars = new char[8];
+                hex(low, chars, 0, 8);
+            } else {
+                chars = new char[32];
+                hex(high, chars, 0, 16);
+                hex(low, chars, 16, 16);
+            }
+            hex = new String(chars);
+            this.hex = hex;
+        }
         return hex;
     }
 
+    /**
+     * Provides the canonical text representation of the address, as
+     * recommended by RFC 5952 for IPv6 addresses, followed by any comment.
+     * IPv6 groups are in lowercase without leading zeros, the longest run of
+     * two or more zero groups is shortened to <tt>::</tt>, and IPv4-mapped
+     * addresses end in dotted decimal, e.g. <tt>2001:db8::1</tt> and
+     * <tt>::ffff:192.0.2.1</tt>.
+     *
+     * @return the canonical representation
+     */
+    public String getCanonical() {
+        String canonical = this.canonical;
+        if (canonical == null) {
+            canonical = appendCanonical(new StringBuilder(ipv == 4 ? 15 : 39)).toString();
+            this.canonical = canonical;
+        }
+        return canonical;
+    }
+
+    /**
+     * Appends the canonical text representation of the address, see
+     * {@link #getCanonical()}.
+     *
+     * @param builder
+     *            the builder to append to
+     * @return the builder
+     */
+    public StringBuilder appendCanonical(StringBuilder builder) {
+        if (ipv == 4) {
+            appendIpv4(builder, (int) low);
+        } else {
+            appendIpv6(builder, high, low);
+        }
+        if (comment != null) {
+            builder.append('%').append(comment);
+        }
+        return builder;
+    }
+
+    /**
+     * Provides the numeric form of an IPv4 address.
+     *
+     * @return the address as a 32 bit number, or 0 for an IPv6 address
+     */
+    public int toInt() {
+        return ipv == 4 ? (int) low : 0;
+    }
+
+    /**
+     * Provides the most significant 64 bits of an IPv6 address.
+     *
+     * @return the most significant bits, always 0 for an IPv4 address
+     */
+    public long getHigh() {
+        return high;
+    }
+
+    /**
+     * Provides the least significant 64 bits of an IPv6 address, or the
+     * unsigned 32 bits of an IPv4 address.
+     *
+     * @return the least significant bits
+     */
+    public long getLow() {
+        return low;
+    }
+
+    /**
+     * Provides the bytes of the address in network order, like
+     * {@link java.net.InetAddress#getAddress()}.
+     *
+     * @return 4 bytes for an IPv4 address, 16 bytes for an IPv6 address
+     */
+    public byte[] getBytes() {
+        byte[] bytes;
+        if (ipv == 4) {
+            bytes = new byte[4];
+            write(low, bytes, 0, 4);
+        } else {
+            bytes = new byte[16];
+            write(high, bytes, 0, 8);
+            write(low, bytes, 8, 8);
+        }
+        return bytes;
+    }
 
     /**
      * Provides any comment parsed from the address.
@@ -84,6 +309,40 @@ public class Address extends Host {
         return ipv == 6;
     }
 
+    /**
+     * Compares addresses numerically, IPv4 addresses before IPv6 addresses.
+     */
+    @Override
+    public int compareTo(Address address) {
+        if (ipv != address.ipv) {
+            return ipv < address.ipv ? -1 : 1;
+        }
+        int comparison = compareUnsigned(high, address.high);
+        return comparison != 0 ? comparison : compareUnsigned(low, address.low);
+    }
+
+    /**
+     * Tells whether another address has the same numeric form and comment.
+     */
+    @Override
+    public boolean equals(Object object) {
+        if (this == object) {
+            return true;
+        }
+        if (!(object instanceof Address)) {
+            return false;
+        }
+        Address address = (Address) object;
+        return ipv == address.ipv && high == address.high && low == address.low
+                && (comment == null ? address.comment == null : comment.equals(address.comment));
+    }
+
+    @Override
+    public int hashCode() {
+        long hash = high * 31 + low;
+        return (int) (hash ^ (hash >>> 32)) + ipv;
+    }
+
     /**
      * Tells whether a host name is an IPv4 address or not.
      *
@@ -93,12 +352,7 @@ public class Address extends Host {
      *         otherwise
      */
     public static boolean isIpv4(String name) {
-        try {
-            parseIpv4(name);
-            return true;
-        } catch (MalformedAddressException malformedAdress) {
-            return false;
-        }
+        return 0 <= AddressLexer.lexIpv4(name, 0, name.length(), false);
     }
 
     /**
@@ -110,12 +364,7 @@ public class Address extends Host {
      *         otherwise
      */
     public static boolean isIpv6(String name) {
-        try {
-            parseIpv6(name);
-            return true;
-        } catch (MalformedAddressException malformedAdress) {
-            return false;
-        }
+        return 0 <= AddressLexer.lexIpv6(name, 0, name.length(), null);
     }
 
     /**
@@ -128,7 +377,7 @@ public class Address extends Host {
      *             when an IPv4 address cannot be parsed by the given host name
      */
     public static String parseIpv4(String name) throws MalformedAddressException {
-        return new Address(name).parseIpv4().hex;
+        return new Address(name, 4).getHex();
     }
 
     /**
@@ -141,7 +390,7 @@ public class Address extends Host {
      *             when an IPv6 address cannot be parsed by the given host name
      */
     public static String parseIpv6(String name) throws MalformedAddressException {
-         return new Address(name).parseIpv6().hex;
+        return new Address(name, 6).getHex();
     }
 
     /**
@@ -157,130 +406,110 @@ public class Address extends Host {
     }
 
     private void parse() throws MalformedAddressException {
-        if (-1 < string.indexOf(".")) {
-            parseIpv4();
-        } else if (-1 < string.indexOf(":")) {
+        int family = AddressLexer.family(string, 0, string.length());
+        if (family == 4) {
+            parseIpv4(false);
+        } else if (family == 6) {
             parseIpv6();
         } else {
-            throw new MalformedAddressException(string, "Not an address!");
+            throw new MalformedAddressException(string, Reason.NOT_ADDRESS);
         }
     }
 
-    private Address parseIpv4() throws MalformedAddressException {
-        StringBuilder hex = new StringBuilder();
-        int mask = 0;
-        int subnet = 'a';
-        int digits = 0;
-        for (char c : string.toCharArray()) {
-            switch (c) {
-            case '0':
-            case '1':
-            case '2':
-            case '3':
-            case '4':
-            case '5':
-            case '6':
-            case '7':
-            case '8':
-            case '9':
-                if (0 < digits && mask == 0)
-                    throw new MalformedAddressException(string, "Zero-padded IPv4 address subnet!");
-                mask *= 10;
-                mask += (int) c - 48;
-                digits++;
-                if (255 < mask)
-                    throw new MalformedAddressException(string, "An IPv4 subnet (i.e. the " + (char) subnet + "-net) can not exceed 255!");
-                break;
-            case '.':
-                if ('c' < subnet)
-                    throw new MalformedAddressException(string, "Too many subnets for an IPv4 address!");
-                if (digits == 0)
-                    throw new MalformedAddressException(string, "Empty IPv4 address " + (char) subnet + "-net!");
-                if (subnet == 'a' && mask == 0)
-                    throw new MalformedAddressException(string, "Zero-leading IPv4 address a-net!");
-                hex.append(String.format("%02x", mask));
-                subnet++;
-                digits = 0;
-                mask = 0;
-                break;
-            default:
-                throw new MalformedAddressException(string, "Illegal characters for an IPv4 address!");
+    private void parseIpv4(boolean isNetwork) throws MalformedAddressException {
+        long address = AddressLexer.lexIpv4(string, 0, string.length(), isNetwork);
+        if (address < 0)
+            throw new MalformedAddressException(string, AddressLexer.reason(address), AddressLexer.message(address));
+        low = address;
+        ipv = 4;
+    }
+
+    private void parseIpv6() throws MalformedAddressException {
+        long[] bits = new long[2];
+        int end = AddressLexer.lexIpv6(string, 0, string.length(), bits);
+        if (end < 0)
+            throw new MalformedAddressException(string, AddressLexer.reason(end), AddressLexer.message(end));
+        if (end + 1 < string.length()) {
+            comment = string.substring(end + 1);
+        }
+        high = bits[0];
+        low = bits[1];
+        ipv = 6;
+    }
+
+    private static void appendIpv4(StringBuilder builder, int address) {
+        for (int shift = 24; 0 <= shift; shift -= 8) {
+            builder.append((address >>> shift) & 0xff);
+            if (0 < shift) {
+                builder.append('.');
             }
         }
-        hex.append(String.format("%02x", mask));
-        this.hex = hex.toString();
-        ipv = 4;
-        return this;
-    }
-
-    private Address parseIpv6() throws MalformedAddressException {
-        StringBuilder suffhex = new StringBuilder();
-        StringBuilder prefhex = new StringBuilder();
-        StringBuilder comment = new StringBuilder();
-        int mask = 0;
-        char d = 0;
-        boolean isPadded = false;
-        boolean isComment = false;
-        for (char c : string.toCharArray()) {
-            if (isComment) {
-                comment.append(c);
-            } else {
-                switch (c) {
-                case '0':
-                case '1':
-                case '2':
-                case '3':
-                case '4':
-                case '5':
-                case '6':
-                case '7':
-                case '8':
-                case '9':
-                case 'a':
-                case 'b':
-                case 'c':
-                case 'd':
-                case 'e':
-                case 'f':
-                    mask *= 16;
-                    mask += Integer.parseInt("" + c, 16);
-                    break;
-                case ':':
-                    if (d == ':') {
-                        if (isPadded)
-                            throw new MalformedAddressException(string, "IPv6 adress can only be zero-padded at one point!");
-                        isPadded = true;
-                    } else {
-                        if (isPadded) {
-                            suffhex.append(String.format("%04x", mask));
-                        } else {
-                            prefhex.append(String.format("%04x", mask));
-                        }
-                    }
-                    mask = 0;
-                    break;
-                case '%':
-                    isComment = true;
-                    break;
-                default:
-                    throw new MalformedAddressException(string, "Illegal characters for an IPv4 address!");
+    }
+
+    private static void appendIpv6(StringBuilder builder, long high, long low) {
+        if (high == 0 && (low >>> 32) == 0xffff) {
+            builder.append("::ffff:"); // IPv4-mapped, RFC 5952 section 5
+            appendIpv4(builder, (int) low);
+            return;
+        }
+        int zeroStart = -1;
+        int zeroLength = 1;
+        for (int i = 0, length = 0; i < 8; i++) {
+            length = group(high, low, i) == 0 ? length + 1 : 0;
+            if (zeroLength < length) {
+                zeroStart = i - length + 1;
+                zeroLength = length;
+            }
+        }
+        for (int i = 0; i < 8; i++) {
+            if (i == zeroStart) {
+                builder.append("::");
+                i += zeroLength - 1;
+                continue;
+            }
+            if (0 < i && i != zeroStart + zeroLength) {
+                builder.append(':');
+            }
+            int group = group(high, low, i);
+            for (int shift = 12; 0 <= shift; shift -= 4) {
+                if (shift == 0 || (group >>> shift) != 0) {
+                    builder.append(HEX_DIGITS[(group >>> shift) & 0xf]);
                 }
-                d = c; // step!
             }
         }
-        if (isPadded) {
-            suffhex.append(String.format("%04x", mask));
-        } else {
-            prefhex.append(String.format("%04x", mask));
+    }
+
+    private static int group(long high, long low, int index) {
+        long bits = index < 4 ? high : low;
+        return (int) (bits >>> (16 * (3 - (index & 3)))) & 0xffff;
+    }
+
+    private static void hex(long bits, char[] chars, int offset, int digits) {
+        for (int i = offset + digits - 1; offset <= i; i--) {
+            chars[i] = HEX_DIGITS[(int) bits & 0xf];
+            bits >>>= 4;
+        }
+    }
+
+    private static long read(byte[] bytes, int offset, int length) {
+        long bits = 0;
+        for (int i = offset; i < offset + length; i++) {
+            bits = (bits << 8) | (bytes[i] & 0xff);
         }
-        int padding = 32 - (prefhex.length() + suffhex.length());
-        if (padding < 0)
-            throw  new MalformedAddressException(string, "Too large data for an IPv6 adress!");
-        hex = String.format("%s%0" + padding  + "x%s", prefhex, 0, suffhex);
-        if (0 < comment.length()) {
-            this.comment = comment.toString();
+        return bits;
+    }
+
+    private static void write(long bits, byte[] bytes, int offset, int length) {
+        for (int i = offset + length - 1; offset <= i; i--) {
+            bytes[i] = (byte) bits;
+            bits >>>= 8;
         }
-        ipv = 6;
-        return this;
     }
+
+    private static int compareUnsigned(long a, long b) {
+        a += Long.MIN_VALUE;
+        b += Long.MIN_VALUE;
+        return a < b ? -1 : (a == b ? 0 : 1);
+    }
+
 }
@@ -0,0 +1,317 @@
+/*
+ * Copyright (C) 2013 Jajja Communications AB
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.jajja.arachne.net;
+
+import com.jajja.arachne.exceptions.Reason;
+
+/**
+ * A single pass validator for IPv4 and IPv6 addresses, producing the numeric
+ * form of an address without allocating, and an error code rather than an
+ * exception for invalid addresses.
+ *
+ * @author Martin Korinth <martin.korinth@jajja.com>
+ */
+final class AddressLexer {
+
+    static final int ZERO_PADDED = -1;
+    static final int TOO_LARGE_SUBNET = -2;
+    static final int TOO_MANY_SUBNETS = -3;
+    static final int EMPTY_SUBNET = -4;
+    static final int ZERO_LEADING = -5;
+    static final int ILLEGAL_IPV4 = -6;
+    static final int TOO_FEW_SUBNETS = -7;
+    static final int ILLEGAL_IPV6 = -8;
+    static final int TOO_LARGE_IPV6 = -9;
+    static final int MULTIPLE_PADDING = -10;
+    static final int EMPTY_GROUP = -11;
+    static final int TOO_LITTLE_IPV6 = -12;
+    static final int NOT_ADDRESS = -13;
+
+    private static final byte[] HEX_VALUES = new byte[128];
+    static {
+        for (int i = 0; i < HEX_VALUES.length; i++) {
+            HEX_VALUES[i] = -1;
+        }
+        for (int i = 0; i < 10; i++) {
+            HEX_VALUES['0' + i] = (byte) i;
+        }
+        for (int i = 0; i < 6; i++) {
+            HEX_VALUES['a' + i] = (byte) (10 + i);
+            HEX_VALUES['A' + i] = (byte) (10 + i);
+        }
+    }
+
+    private AddressLexer() {
+    }
+
+    /**
+     * Validates an IPv4 address in dotted decimal form.
+     *
+     * @param name
+     *            the characters containing the address
+     * @param start
+     *            the start of the address
+     * @param end
+     *            the end of the address, exclusive
+     * @param isNetwork
+     *            whether the address is of a network, for which a zero a-net
+     *            is legal
+     * @return the address as an unsigned 32 bit number, or a negative error
+     *         code for invalid addresses
+     */
+    static long lexIpv4(CharSequence name, int start, int end, boolean isNetwork) {
+        long address = 0;
+        int mask = 0;
+        int subnet = 'a';
+        int digits = 0;
+        for (int i = start; i < end; i++) {
+            char c = name.charAt(i);
+            if (c >= '0' && c <= '9') {
+                if (0 < digits && mask == 0)
+                    return ZERO_PADDED;
+                mask = mask * 10 + (c - '0');
+                digits++;
+                if (255 < mask)
+                    return error(TOO_LARGE_SUBNET, subnet);
+            } else if (c == '.') {
+                if ('c' < subnet)
+                    return TOO_MANY_SUBNETS;
+                if (digits == 0)
+                    return error(EMPTY_SUBNET, subnet);
+                if (subnet == 'a' && mask == 0 && !isNetwork)
+                    return ZERO_LEADING;
+                address = (address << 8) | mask;
+                subnet++;
+                digits = 0;
+                mask = 0;
+            } else {
+                return ILLEGAL_IPV4;
+            }
+        }
+        if (subnet != 'd')
+            return TOO_FEW_SUBNETS;
+        if (digits == 0)
+            return error(EMPTY_SUBNET, subnet);
+        return (address << 8) | mask;
+    }
+
+    /**
+     * Validates an IPv6 address in any of the textual forms of RFC 4291, i.e.
+     * colon separated hexadecimal groups in any case, optionally zero-padded
+     * at one point and optionally ending in a dotted decimal IPv4 address, and
+     * optionally followed by a comment, such as a zone, after a <tt>%</tt>.
+     *
+     * @param name
+     *            the characters containing the address
+     * @param start
+     *            the start of the address
+     * @param end
+     *            the end of the address, exclusive
+     * @param bits
+     *            an array to store the most and least significant 64 bits of
+     *            the address in, or null to validate only
+     * @return the offset of the comment separator, or the end if there is no
+     *         comment, or a negative error code for invalid addresses
+     */
+    static int lexIpv6(CharSequence name, int start, int end, long[] bits) {
+        int comment = end;
+        for (int i = start; i < end; i++) {
+            if (name.charAt(i) == '%') {
+                comment = i;
+                break;
+            }
+        }
+        long headHigh = 0;
+        long headLow = 0;
+        int head = 0;
+        long tailHigh = 0;
+        long tailLow = 0;
+        int tail = 0;
+        boolean isPadded = false;
+        int i = start;
+        if (i + 1 < comment && name.charAt(i) == ':' && name.charAt(i + 1) == ':') {
+            isPadded = true;
+            i += 2;
+        }
+        while (i < comment) {
+            int group = 0;
+            int digits = 0;
+            int groupStart = i;
+            char c;
+            while (i < comment && (c = name.charAt(i)) != ':') {
+                if (c == '.') {
+                    long address = lexIpv4(name, groupStart, comment, true);
+                    if (address < 0)
+                        return (int) address;
+                    if (7 <= head + tail)
+                        return TOO_LARGE_IPV6;
+                    group = (int) (address >>> 16);
+                    if (isPadded) {
+                        tailHigh = (tailHigh << 16) | (tailLow >>> 48);
+                        tailLow = (tailLow << 16) | group;
+                        tail++;
+                    } else {
+                        headHigh = (headHigh << 16) | (headLow >>> 48);
+                        headLow = (headLow << 16) | group;
+                        head++;
+                    }
+                    group = (int) address & 0xffff;
+                    digits = 1;
+                    i = comment;
+                    break;
+                }
+                int value = c < 128 ? HEX_VALUES[c] : -1;
+                if (value < 0)
+                    return ILLEGAL_IPV6;
+                if (4 < ++digits)
+                    return TOO_LARGE_IPV6;
+                group = (group << 4) | value;
+                i++;
+            }
+            if (digits == 0)
+                return EMPTY_GROUP;
+            if (8 <= head + tail)
+                return TOO_LARGE_IPV6;
+            if (isPadded) {
+                tailHigh = (tailHigh << 16) | (tailLow >>> 48);
+                tailLow = (tailLow << 16) | group;
+                tail++;
+            } else {
+                headHigh = (headHigh << 16) | (headLow >>> 48);
+                headLow = (headLow << 16) | group;
+                head++;
+            }
+            if (i < comment) {
+                i++; // step!
+                if (i < comment && name.charAt(i) == ':') {
+                    if (isPadded)
+                        return MULTIPLE_PADDING;
+                    isPadded = true;
+                    i++;
+                } else if (i == comment) {
+                    return EMPTY_GROUP;
+                }
+            }
+        }
+        if (isPadded ? 7 < head + tail : head != 8)
+            return isPadded ? TOO_LARGE_IPV6 : TOO_LITTLE_IPV6;
+        if (bits != null) {
+            for (int shift = head; shift < 8; shift++) {
+                headHigh = (headHigh << 16) | (headLow >>> 48);
+                headLow <<= 16;
+            }
+            bits[0] = headHigh | tailHigh;
+            bits[1] = headLow | tailLow;
+        }
+        return comment;
+    }
+
+    /**
+     * Tells which family an address belongs to, by the separators used, without
+     * validating it. Any colon makes an IPv6 address, since an IPv6 address may
+     * embed an IPv4 address.
+     *
+     * @param name
+     *            the characters containing the address
+     * @param start
+     *            the start of the address
+     * @param end
+     *            the end of the address, exclusive
+     * @return 4 for IPv4, 6 for IPv6 or {@link #NOT_ADDRESS} for neither
+     */
+    static int family(CharSequence name, int start, int end) {
+        boolean isDot = false;
+        for (int i = start; i < end; i++) {
+            char c = name.charAt(i);
+            if (c == ':') {
+                return 6;
+            } else if (c == '.') {
+                isDot = true;
+            }
+        }
+        return isDot ? 4 : NOT_ADDRESS;
+    }
+
+    /**
+     * Provides the reason for an error code returned by the lexer.
+     *
+     * @param error
+     *            the error code
+     * @return the reason
+     */
+    static Reason reason(long error) {
+        switch (-((int) -error & 15)) {
+        case ZERO_PADDED:
+            return Reason.ZERO_PADDED_SUBNET;
+        case TOO_LARGE_SUBNET:
+            return Reason.SUBNET_TOO_LARGE;
+        case TOO_MANY_SUBNETS:
+            return Reason.TOO_MANY_SUBNETS;
+        case EMPTY_SUBNET:
+            return Reason.EMPTY_SUBNET;
+        case ZERO_LEADING:
+            return Reason.ZERO_LEADING_SUBNET;
+        case ILLEGAL_IPV4:
+            return Reason.INVALID_IPV4_CHARACTERS;
+        case TOO_FEW_SUBNETS:
+            return Reason.TOO_FEW_SUBNETS;
+        case ILLEGAL_IPV6:
+            return Reason.INVALID_IPV6_CHARACTERS;
+        case TOO_LARGE_IPV6:
+            return Reason.IPV6_TOO_LARGE;
+        case MULTIPLE_PADDING:
+            return Reason.MULTIPLE_PADDING;
+        case EMPTY_GROUP:
+            return Reason.EMPTY_GROUP;
+        case TOO_LITTLE_IPV6:
+            return Reason.IPV6_TOO_SMALL;
+        default:
+            return Reason.NOT_ADDRESS;
+        }
+    }
+
+    /**
+     * Provides the message for an error code returned by the lexer, naming the
+     * offending subnet of an IPv4 address where applicable.
+     *
+     * @param error
+     *            the error code
+     * @return the message
+     */
+    static String message(long error) {
+        Reason reason = reason(error);
+        char subnet = (char) ('a' + ((int) -error >> 4));
+        switch (reason) {
+        case SUBNET_TOO_LARGE:
+            return "An IPv4 subnet (i.e. the " + subnet + "-net) can not exceed 255!";
+        case EMPTY_SUBNET:
+            return "Empty IPv4 address " + subnet + "-net!";
+        default:
+            return reason.getMessage();
+        }
+    }
+
+    private static int error(int reason, int subnet) {
+        return reason - ((subnet - 'a') << 4);
+    }
+
+}
@@ -0,0 +1,528 @@
+/*
+ * Copyright (C) 2013 Jajja Communications AB
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.jajja.arachne.net;
+
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.util.Arrays;
+
+import com.jajja.arachne.exceptions.MalformedDomainException;
+import com.jajja.arachne.net.PercentCodec.Component;
+
+/**
+ * A canonicalizer of URLs, writing the canonical form of the components of a
+ * URL in one pass. The canonical form has
+ * <ul>
+ * <li>the scheme in lowercase,</li>
+ * <li>domains as lowercase ASCII compatible names and addresses as canonical
+ * text, with IPv6 addresses in brackets,</li>
+ * <li>percent escapes in uppercase, with unreserved characters decoded and
+ * characters that may not appear in each component escaped as UTF-8, as by
+ * {@link PercentCodec#normalize(CharSequence, int, int, Component, Appendable)},</li>
+ * <li>dot segments removed from the path, and "/" for an empty path,</li>
+ * </ul>
+ * and, as configured by flags, default ports, empty queries and fragments
+ * removed, and query parameters sorted by name.
+ *
+ * Canonicalizers keep buffers for reuse between URLs, and are not safe for use
+ * by multiple threads.
+ *
+ * @author Martin Korinth <martin.korinth@jajja.com>
+ */
+public final class Canonicalizer {
+
+    /** Removes the port when it is the default port of the scheme. */
+    public static final int REMOVE_DEFAULT_PORT = 1;
+
+    /** Removes empty queries, "?" without parameters. */
+    public static final int REMOVE_EMPTY_QUERY = 2;
+
+    /** Removes empty fragments. */
+    public static final int REMOVE_EMPTY_FRAGMENT = 4;
+
+    /** Removes fragments. */
+    public static final int REMOVE_FRAGMENT = 8;
+
+    /** Sorts query parameters by name, keeping the order of equal names. */
+    public static final int SORT_PARAMETERS = 16;
+
+    /** The flags used by {@link Url#normalize()}. */
+    public static final int DEFAULT = REMOVE_DEFAULT_PORT | REMOVE_EMPTY_QUERY | REMOVE_EMPTY_FRAGMENT;
+
+    private final int flags;
+    private final StringBuilder buffer = new StringBuilder(256);
+    private final StringBuilder scratch = new StringBuilder(256);
+    private final StringBuilder sorted = new StringBuilder(256);
+    private int[] parts = new int[32];
+    private final Fingerprint fingerprint = new Fingerprint();
+
+    /**
+     * Creates a canonicalizer with the {@link #DEFAULT} flags.
+     */
+    public Canonicalizer() {
+        this(DEFAULT);
+    }
+
+    /**
+     * Creates a canonicalizer.
+     *
+     * @param flags
+     *            the flags, a combination of {@link #REMOVE_DEFAULT_PORT},
+     *            {@link #REMOVE_EMPTY_QUERY}, {@link #REMOVE_EMPTY_FRAGMENT},
+     *            {@link #REMOVE_FRAGMENT} and {@link #SORT_PARAMETERS}
+     */
+    public Canonicalizer(int flags) {
+        this.flags = flags;
+    }
+
+    /**
+     * Provides the flags of the canonicalizer.
+     *
+     * @return the flags
+     */
+    public int getFlags() {
+        return flags;
+    }
+
+    /**
+     * Provides the canonical form of a URL.
+     *
+     * @param url
+     *            the URL
+     * @return the canonical form
+     */
+    public String canonicalize(Url url) {
+        buffer.setLength(0);
+        return append(url, buffer).toString();
+    }
+
+    /**
+     * Appends the canonical form of a URL to a builder.
+     *
+     * @param url
+     *            the URL
+     * @param builder
+     *            the builder
+     * @return the builder
+     */
+    public StringBuilder append(Url url, StringBuilder builder) {
+        try {
+            write(url, builder);
+        } catch (IOException e) {
+            // Not thrown by string builders
+            throw new RuntimeException(e);
+        }
+        return builder;
+    }
+
+    /**
+     * Writes the canonical form of a URL to an appendable.
+     *
+     * @param url
+     *            the URL
+     * @param out
+     *            the appendable
+     * @throws IOException
+     *             when thrown by the appendable
+     */
+    public void write(Url url, Appendable out) throws IOException {
+        writePrefix(url, out);
+        writeReference(url.getPath(), url.getHost() != null, url.getQuery(), url.getQuerySeparator(), url.getFragment(), out);
+    }
+
+    /**
+     * Writes the canonical scheme and authority of a URL, which prefix the
+     * canonical path.
+     */
+    void writePrefix(Url url, Appendable out) throws IOException {
+        String scheme = url.getScheme();
+        appendLowerCase(scheme, out);
+        out.append("://");
+        Host host = url.getHost();
+        if (host != null) {
+            String userInfo = url.getUserInfo();
+            if (userInfo != null) {
+                PercentCodec.normalize(userInfo, 0, userInfo.length(), Component.USER_INFO, out);
+                out.append('@');
+            }
+            appendHost(host, out);
+            Integer port = url.getPort();
+            if (port != null && !((flags & REMOVE_DEFAULT_PORT) != 0 && port.intValue() == getDefaultPort(scheme))) {
+                out.append(':');
+                out.append(Integer.toString(port.intValue()));
+            }
+        }
+    }
+
+    /**
+     * Writes the canonical path, query and fragment of a URL.
+     */
+    void writeReference(CharSequence path, boolean hasHost, String query, String separator, String fragment, Appendable out) throws IOException {
+        out.append(path(path, hasHost));
+        CharSequence canonical = query(query, separator);
+        if (canonical != null) {
+            out.append('?');
+            out.append(canonical);
+        }
+        fragment = fragment(fragment);
+        if (fragment != null) {
+            out.append('#');
+            PercentCodec.normalize(fragment, 0, fragment.length(), Component.FRAGMENT, out);
+        }
+    }
+
+    /**
+     * Provides a 64-bit fingerprint of the canonical form of a URL, hashed
+     * without building the canonical form.
+     *
+     * @param url
+     *            the URL
+     * @return the fingerprint
+     */
+    public long fingerprint(Url url) {
+        return hash(url).getLow();
+    }
+
+    /**
+     * Provides a 128-bit fingerprint of the canonical form of a URL, hashed
+     * without building the canonical form.
+     *
+     * @param url
+     *            the URL
+     * @param hash
+     *            an array of at least two longs, for the high and low 64 bits
+     * @return the array
+     */
+    public long[] fingerprint(Url url, long[] hash) {
+        return hash(url).get(hash);
+    }
+
+    /**
+     * Provides a fingerprint of a URL prefixed by a fingerprint of its site,
+     * so that fingerprints sort by site. The site is the registered domain of
+     * the host, or the canonical host for addresses and domains that are not
+     * registered.
+     *
+     * @param url
+     *            the URL
+     * @param hash
+     *            an array of at least two longs, for the 64-bit fingerprints of
+     *            the site and the URL
+     * @return the array
+     */
+    public long[] siteFingerprint(Url url, long[] hash) {
+        hash[1] = fingerprint(url);
+        fingerprint.reset();
+        Host host = url.getHost();
+        if (host != null) {
+            String registered = host.isDomain() ? ((Domain) host).getRegistered() : null;
+            try {
+                if (registered != null) {
+                    appendLowerCase(registered, fingerprint);
+                } else {
+                    appendHost(host, fingerprint);
+                }
+            } catch (IOException e) {
+                // Not thrown by fingerprints
+                throw new RuntimeException(e);
+            }
+        }
+        hash[0] = fingerprint.getLow();
+        return hash;
+    }
+
+    /**
+     * Provides the fingerprint of the canonicalizer, reset, for hashing
+     * canonical forms written in parts.
+     */
+    Fingerprint resetFingerprint() {
+        return fingerprint.reset();
+    }
+
+    private Fingerprint hash(Url url) {
+        fingerprint.reset();
+        try {
+            write(url, fingerprint);
+        } catch (IOException e) {
+            // Not thrown by fingerprints
+            throw new RuntimeException(e);
+        }
+        return fingerprint;
+    }
+
+    /**
+     * Provides a copy of a URL with canonical components, replacing only the
+     * components that are not already canonical.
+     *
+     * @param url
+     *            the URL
+     * @return the copy
+     */
+    public Url normalize(Url url) {
+        Url copy = new Url(url);
+        try {
+            String scheme = url.getScheme();
+            if (!scheme.equals(scheme = scheme.toLowerCase())) {
+                copy.setScheme(scheme);
+            }
+            Host host = url.getHost();
+            if (host != null) {
+                buffer.setLength(0);
+                appendHost(host, buffer);
+                if (host.isAddress() && !((Address) host).isIpv4()) {
+                    buffer.deleteCharAt(buffer.length() - 1).deleteCharAt(0);
+                }
+                if (!host.toString().contentEquals(buffer)) {
+                    copy.setHost(buffer.toString());
+                }
+                String userInfo = url.getUserInfo();
+                if (userInfo != null) {
+                    buffer.setLength(0);
+                    PercentCodec.normalize(userInfo, 0, userInfo.length(), Component.USER_INFO, buffer);
+                    if (!userInfo.contentEquals(buffer)) {
+                        copy.setUserinfo(buffer.toString());
+                    }
+                }
+                Integer port = url.getPort();
+                if (port != null && (flags & REMOVE_DEFAULT_PORT) != 0 && port.intValue() == getDefaultPort(scheme)) {
+                    copy.setPort(null);
+                }
+            }
+            String path = url.getPath();
+            CharSequence canonical = path(path, host != null);
+            if (path == null ? 0 < canonical.length() : !path.contentEquals(canonical)) {
+                copy.setPath(canonical.toString());
+            }
+            String query = url.getQuery();
+            canonical = query(query, url.getQuerySeparator());
+            if (query == null ? canonical != null : canonical == null || !query.contentEquals(canonical)) {
+                copy.setQuery(canonical == null ? null : canonical.toString());
+            }
+            String fragment = url.getFragment();
+            String canonicalFragment = fragment(fragment);
+            if (canonicalFragment != null) {
+                buffer.setLength(0);
+                PercentCodec.normalize(canonicalFragment, 0, canonicalFragment.length(), Component.FRAGMENT, buffer);
+                canonicalFragment = buffer.toString();
+            }
+            if (fragment == null ? canonicalFragment != null : !fragment.equals(canonicalFragment)) {
+                copy.setFragment(canonicalFragment);
+            }
+        } catch (URISyntaxException e) {
+            // Validated when parsed
+            throw new RuntimeException(e);
+        } catch (MalformedDomainException e) {
+            // Canonical hosts are valid hosts
+            throw new RuntimeException(e);
+        } catch (IOException e) {
+            // Not thrown by string builders
+            throw new RuntimeException(e);
+        }
+        return copy;
+    }
+
+    /**
+     * Provides the default port of a scheme.
+     *
+     * @param scheme
+     *            the scheme, in any case
+     * @return the default port, or -1 for schemes without known default port
+     */
+    public static int getDefaultPort(String scheme) {
+        switch (scheme.length()) {
+        case 2:
+            return scheme.equalsIgnoreCase("ws") ? 80 : -1;
+        case 3:
+            return scheme.equalsIgnoreCase("ftp") ? 21 : scheme.equalsIgnoreCase("wss") ? 443 : -1;
+        case 4:
+            return scheme.equalsIgnoreCase("http") ? 80 : -1;
+        case 5:
+            return scheme.equalsIgnoreCase("https") ? 443 : -1;
+        case 6:
+            return scheme.equalsIgnoreCase("gopher") ? 70 : -1;
+        default:
+            return -1;
+        }
+    }
+
+    private static void appendHost(Host host, Appendable out) throws IOException {
+        if (host.isAddress()) {
+            Address address = (Address) host;
+            if (address.isIpv4()) {
+                out.append(address.getCanonical());
+            } else {
+                out.append('[').append(address.getCanonical()).append(']');
+            }
+        } else {
+            String fqdn = ((Domain) host).getFqdn();
+            out.append(fqdn);
+        }
+    }
+
+    /**
+     * Provides the canonical path, valid until the next use of the scratch
+     * buffer.
+     */
+    private CharSequence path(CharSequence path, boolean hasHost) throws IOException {
+        scratch.setLength(0);
+        if (path == null || path.length() == 0) {
+            if (hasHost) {
+                scratch.append('/');
+            }
+            return scratch;
+        }
+        PercentCodec.normalize(path, 0, path.length(), Component.PATH, scratch);
+        removeDotSegments(scratch);
+        return scratch;
+    }
+
+    /**
+     * Provides the canonical query, or null for no query, valid until the
+     * next use of the scratch buffer.
+     */
+    private CharSequence query(String query, String separator) throws IOException {
+        if (query == null || (query.isEmpty() && (flags & REMOVE_EMPTY_QUERY) != 0)) {
+            return null;
+        }
+        scratch.setLength(0);
+        PercentCodec.normalize(query, 0, query.length(), Component.QUERY, scratch);
+        if ((flags & SORT_PARAMETERS) != 0 && !separator.isEmpty()) {
+            sort(separator);
+        }
+        return scratch;
+    }
+
+    private String fragment(String fragment) {
+        if (fragment == null || (flags & REMOVE_FRAGMENT) != 0 || (fragment.isEmpty() && (flags & REMOVE_EMPTY_FRAGMENT) != 0)) {
+            return null;
+        }
+        return fragment;
+    }
+
+    /**
+     * Sorts the parameters of the query in the scratch buffer by name, by a
+     * stable insertion sort of the offsets of the parameters.
+     */
+    private void sort(String separator) {
+        int count = 0;
+        int start = 0;
+        int length = scratch.length();
+        while (start <= length) {
+            int end = scratch.indexOf(separator, start);
+            if (end < 0) {
+                end = length;
+            }
+            if (parts.length < 2 * count + 2) {
+                parts = Arrays.copyOf(parts, parts.length * 2);
+            }
+            parts[2 * count] = start;
+            parts[2 * count + 1] = end;
+            count++;
+            start = end + separator.length();
+        }
+        boolean isSorted = true;
+        for (int i = 1; i < count; i++) {
+            int s = parts[2 * i], e = parts[2 * i + 1];
+            int j = i - 1;
+            while (0 <= j && 0 < compareNames(parts[2 * j], parts[2 * j + 1], s, e)) {
+                parts[2 * j + 2] = parts[2 * j];
+                parts[2 * j + 3] = parts[2 * j + 1];
+                j--;
+            }
+            if (j != i - 1) {
+                isSorted = false;
+            }
+            parts[2 * j + 2] = s;
+            parts[2 * j + 3] = e;
+        }
+        if (isSorted) {
+            return;
+        }
+        sorted.setLength(0);
+        for (int i = 0; i < count; i++) {
+            if (i != 0) {
+                sorted.append(separator);
+            }
+            sorted.append(scratch, parts[2 * i], parts[2 * i + 1]);
+        }
+        scratch.setLength(0);
+        scratch.append(sorted);
+    }
+
+    private int compareNames(int start1, int end1, int start2, int end2) {
+        for (;; start1++, start2++) {
+            char c1 = start1 < end1 ? scratch.charAt(start1) : '=';
+            char c2 = start2 < end2 ? scratch.charAt(start2) : '=';
+            if (c1 == '=' || c2 == '=') {
+                return c1 == c2 ? 0 : c1 == '=' ? -1 : 1;
+            }
+            if (c1 != c2) {
+                return c1 - c2;
+            }
+        }
+    }
+
+    /**
+     * Removes dot segments from a path, in place, as specified in RFC 3986
+     * section 5.2.4.
+     */
+    static void removeDotSegments(StringBuilder path) {
+        int length = path.length();
+        int in = 0;
+        int out = 0;
+        while (in < length) {
+            int end = in + 1;
+            while (end < length && path.charAt(end) != '/') {
+                end++;
+            }
+            // the segment, with its leading slash if any, is [in, end)
+            int segment = path.charAt(in) == '/' ? in + 1 : in;
+            int size = end - segment;
+            boolean isLast = end == length;
+            if (size == 1 && path.charAt(segment) == '.') {
+                if (isLast && segment != in) {
+                    path.setCharAt(out++, '/');
+                }
+            } else if (size == 2 && path.charAt(segment) == '.' && path.charAt(segment + 1) == '.') {
+                while (0 < out && path.charAt(--out) != '/') {
+                }
+                if (isLast && segment != in) {
+                    path.setCharAt(out++, '/');
+                }
+            } else {
+                for (int i = in; i < end; i++) {
+                    path.setCharAt(out++, path.charAt(i));
+                }
+            }
+            in = end;
+        }
+        path.setLength(out);
+    }
+
+    private static void appendLowerCase(String s, Appendable out) throws IOException {
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            out.append(c >= 'A' && c <= 'Z' ? (char) (c + ('a' - 'A')) : c);
+        }
+    }
+
+}
@@ -0,0 +1,182 @@
+/*
+ * Copyright (C) 2013 Jajja Communications AB
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.jajja.arachne.net;
+
+import com.jajja.arachne.exceptions.MalformedAddressException;
+import com.jajja.arachne.exceptions.Reason;
+
+/**
+ * A range of Internet addresses in CIDR notation, such as 10.0.0.0/8 or
+ * 2001:db8::/32. Any address bits beyond the prefix length are cleared, so
+ * that 10.1.2.3/8 denotes the same range as 10.0.0.0/8. An address without a
+ * prefix length denotes the range of that address only.
+ *
+ * @author Martin Korinth <martin.korinth@jajja.com>
+ */
+public final class Cidr implements Comparable<Cidr> {
+
+    private final Address address;
+    private final int prefix;
+
+    /**
+     * Creates a range by parsing its CIDR notation.
+     *
+     * @param string
+     *            the CIDR notation, e.g. 192.168.0.0/16
+     * @throws MalformedAddressException
+     *             when the notation can not be parsed as a range
+     */
+    public Cidr(String string) throws MalformedAddressException {
+        int slash = string.indexOf('/');
+        Address address = Address.network(slash < 0 ? string : string.substring(0, slash));
+        int width = address.isIpv4() ? 32 : 128;
+        int prefix = width;
+        if (-1 < slash) {
+            int length = string.length();
+            if (slash + 1 == length || slash + 4 < length) {
+                throw new MalformedAddressException(string, Reason.INVALID_PREFIX);
+            }
+            prefix = 0;
+            for (int i = slash + 1; i < length; i++) {
+                char c = string.charAt(i);
+                if (c < '0' || '9' < c) {
+                    throw new MalformedAddressException(string, Reason.INVALID_PREFIX);
+                }
+                prefix = prefix * 10 + (c - '0');
+            }
+            if (width < prefix) {
+                throw new MalformedAddressException(string, Reason.PREFIX_TOO_LONG, "The prefix length of a range can not exceed " + width + "!");
+            }
+        }
+        this.address = mask(address, prefix);
+        this.prefix = prefix;
+    }
+
+    private Cidr(Address address, int prefix) {
+        this.address = address;
+        this.prefix = prefix;
+    }
+
+    /**
+     * Creates the range of addresses sharing the given number of leading bits
+     * with an address.
+     *
+     * @param address
+     *            any address in the range
+     * @param prefix
+     *            the prefix length, at most 32 for IPv4 and 128 for IPv6
+     * @return the range
+     * @throws IllegalArgumentException
+     *             when the prefix length is out of bounds
+     */
+    public static Cidr valueOf(Address address, int prefix) {
+        if (prefix < 0 || (address.isIpv4() ? 32 : 128) < prefix) {
+            throw new IllegalArgumentException("Prefix length out of bounds: " + prefix);
+        }
+        return new Cidr(mask(address, prefix), prefix);
+    }
+
+    /**
+     * Provides the network address, the lowest address of the range.
+     *
+     * @return the network address
+     */
+    public Address getAddress() {
+        return address;
+    }
+
+    /**
+     * Provides the prefix length, the number of leading bits shared by all
+     * addresses of the range.
+     *
+     * @return the prefix length
+     */
+    public int getPrefix() {
+        return prefix;
+    }
+
+    /**
+     * Tells whether the range is of IPv4 addresses or not.
+     *
+     * @return true if the range is IPv4, false if it is IPv6
+     */
+    public boolean isIpv4() {
+        return address.isIpv4();
+    }
+
+    /**
+     * Tells whether an address is within the range.
+     *
+     * @param address
+     *            the address
+     * @return true if the address is within the range, false otherwise
+     */
+    public boolean contains(Address address) {
+        if (address.isIpv4() != this.address.isIpv4()) {
+            return false;
+        }
+        int shift = address.isIpv4() ? 96 : 0;
+        return CidrTrie.isPrefix(this.address.getHigh(), this.address.getLow(), address.getHigh(), address.getLow(), prefix + shift);
+    }
+
+    @Override
+    public int compareTo(Cidr cidr) {
+        int comparison = address.compareTo(cidr.address);
+        return comparison != 0 ? comparison : prefix - cidr.prefix;
+    }
+
+    @Override
+    public boolean equals(Object object) {
+        if (this == object) {
+            return true;
+        }
+        if (!(object instanceof Cidr)) {
+            return false;
+        }
+        Cidr cidr = (Cidr) object;
+        return prefix == cidr.prefix && address.equals(cidr.address);
+    }
+
+    @Override
+    public int hashCode() {
+        return address.hashCode() * 31 + prefix;
+    }
+
+    @Override
+    public String toString() {
+        return address.toString() + "/" + prefix;
+    }
+
+    private static Address mask(Address address, int prefix) {
+        if (address.isIpv4()) {
+            int bits = prefix == 0 ? 0 : address.toInt() & (-1 << (32 - prefix));
+            return bits == address.toInt() && address.getComment() == null ? address : Address.valueOf(bits);
+        }
+        long high = address.getHigh() & CidrTrie.mask(prefix);
+        long low = address.getLow() & CidrTrie.mask(prefix - 64);
+        if (high == address.getHigh() && low == address.getLow() && address.getComment() == null) {
+            return address;
+        }
+        return Address.valueOf(high, low);
+    }
+
+}
@@ -0,0 +1,369 @@
+/*
+ * Copyright (C) 2013 Jajja Communications AB
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.jajja.arachne.net;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import com.jajja.arachne.exceptions.MalformedAddressException;
+
+/**
+ * An immutable table of address ranges with attached values, answering which
+ * is the most specific range containing an address, i.e. longest-prefix
+ * matching. IPv4 and IPv6 ranges may be mixed in one table.
+ *
+ * The ranges are held in a path-compressed binary trie, flattened into arrays
+ * of primitives, so that a lookup neither allocates nor follows more than one
+ * node per distinct prefix length on the path to the address. Lookups by the
+ * numeric form of an address avoid creating an {@link Address} altogether. A
+ * table is thread safe.
+ *
+ * <pre>
+ * Map&lt;Cidr, String&gt; ranges = new HashMap&lt;Cidr, String&gt;();
+ * ranges.put(new Cidr("10.0.0.0/8"), "internal");
+ * CidrTrie&lt;String&gt; trie = CidrTrie.build(ranges);
+ * String value = trie.get(new Address("10.1.2.3")); // internal
+ * </pre>
+ *
+ * @author Martin Korinth <martin.korinth@jajja.com>
+ */
+public final class CidrTrie<V> {
+
+    private static final Log log = LogFactory.getLog(CidrTrie.class);
+
+    private final long[] highs;
+    private final long[] lows;
+    private final int[] bits;
+    private final int[] children;
+    private final int[] entries;
+    private final Cidr[] cidrs;
+    private final Object[] values;
+    private final int ipv4;
+    private final int ipv6;
+    private int count;
+
+    private CidrTrie(List<Cidr> ipv4, List<Cidr> ipv6, Map<Cidr, ? extends V> ranges) {
+        int size = ipv4.size() + ipv6.size();
+        int nodes = 2 * size + 2;
+        highs = new long[nodes];
+        lows = new long[nodes];
+        bits = new int[nodes];
+        children = new int[2 * nodes];
+        entries = new int[nodes];
+        cidrs = new Cidr[size];
+        values = new Object[size];
+        ipv4.toArray(cidrs);
+        for (int i = 0; i < ipv6.size(); i++) {
+            cidrs[ipv4.size() + i] = ipv6.get(i);
+        }
+        for (int i = 0; i < size; i++) {
+            values[i] = ranges.get(cidrs[i]);
+        }
+        this.ipv4 = build(0, ipv4.size());
+        this.ipv6 = build(ipv4.size(), size);
+    }
+
+    /**
+     * Builds a table of ranges.
+     *
+     * @param ranges
+     *            the ranges and their values
+     * @return the table
+     */
+    public static <V> CidrTrie<V> build(Map<Cidr, ? extends V> ranges) {
+        List<Cidr> ipv4 = new ArrayList<Cidr>();
+        List<Cidr> ipv6 = new ArrayList<Cidr>();
+        for (Cidr cidr : ranges.keySet()) {
+            (cidr.isIpv4() ? ipv4 : ipv6).add(cidr);
+        }
+        Collections.sort(ipv4);
+        Collections.sort(ipv6);
+        return new CidrTrie<V>(ipv4, ipv6, ranges);
+    }
+
+    /**
+     * Loads a table of ranges from a text file of one range per line, in CIDR
+     * notation and optionally followed by white space and a value. Blank lines
+     * and lines starting with <tt>#</tt> are ignored. A later line for the same
+     * range replaces an earlier one.
+     *
+     * <pre>
+     * # internal networks
+     * 10.0.0.0/8      internal
+     * fc00::/7        internal
+     * 192.0.2.1
+     * </pre>
+     *
+     * @param file
+     *            the text file, encoded in UTF-8
+     * @return the table, with the text following each range as its value, or
+     *         null for a range without text
+     * @throws IOException
+     *             when the file can not be read or contains a malformed range
+     */
+    public static CidrTrie<String> load(File file) throws IOException {
+        Map<Cidr, String> ranges = new LinkedHashMap<Cidr, String>();
+        BufferedReader bufferedReader = null;
+        try {
+            bufferedReader = new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF-8"));
+            String line;
+            int number = 0;
+            while ((line = bufferedReader.readLine()) != null) {
+                number++;
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+                int end = 0;
+                while (end < line.length() && !Character.isWhitespace(line.charAt(end))) {
+                    end++;
+                }
+                String value = end < line.length() ? line.substring(end).trim() : null;
+                try {
+                    ranges.put(new Cidr(line.substring(0, end)), value);
+                } catch (MalformedAddressException e) {
+                    throw new IOException("Malformed range on line " + number + " of " + file + ": " + e.getMessage(), e);
+                }
+            }
+        } finally {
+            if (bufferedReader != null) {
+                try {
+                    bufferedReader.close();
+                } catch (IOException e) {
+                    log.warn("Failed to close reader", e);
+                }
+            }
+        }
+        return build(ranges);
+    }
+
+    /**
+     * Provides the number of ranges of the table.
+     *
+     * @return the number of ranges
+     */
+    public int size() {
+        return cidrs.length;
+    }
+
+    /**
+     * Provides the value of the most specific range containing an address.
+     *
+     * @param address
+     *            the address
+     * @return the value, or null if no range contains the address
+     */
+    public V get(Address address) {
+        int entry = address.isIpv4() ? find(ipv4, address.getLow() << 32, 0) : find(ipv6, address.getHigh(), address.getLow());
+        return value(entry);
+    }
+
+    /**
+     * Provides the value of the most specific range containing an IPv4
+     * address.
+     *
+     * @param address
+     *            the address as a 32 bit number, as by {@link Address#toInt()}
+     * @return the value, or null if no range contains the address
+     */
+    public V get(int address) {
+        return value(find(ipv4, (long) address << 32, 0));
+    }
+
+    /**
+     * Provides the value of the most specific range containing an IPv6
+     * address.
+     *
+     * @param high
+     *            the most significant 64 bits of the address
+     * @param low
+     *            the least significant 64 bits of the address
+     * @return the value, or null if no range contains the address
+     */
+    public V get(long high, long low) {
+        return value(find(ipv6, high, low));
+    }
+
+    /**
+     * Provides the most specific range containing an address.
+     *
+     * @param address
+     *            the address
+     * @return the range, or null if no range contains the address
+     */
+    public Cidr match(Address address) {
+        int entry = address.isIpv4() ? find(ipv4, address.getLow() << 32, 0) : find(ipv6, address.getHigh(), address.getLow());
+        return entry < 0 ? null : cidrs[entry];
+    }
+
+    /**
+     * Tells whether any range contains an address.
+     *
+     * @param address
+     *            the address
+     * @return true if the address is within a range, false otherwise
+     */
+    public boolean contains(Address address) {
+        int entry = address.isIpv4() ? find(ipv4, address.getLow() << 32, 0) : find(ipv6, address.getHigh(), address.getLow());
+        return -1 < entry;
+    }
+
+    /**
+     * Tells whether any range contains an IPv4 address.
+     *
+     * @param address
+     *            the address as a 32 bit number, as by {@link Address#toInt()}
+     * @return true if the address is within a range, false otherwise
+     */
+    public boolean contains(int address) {
+        return -1 < find(ipv4, (long) address << 32, 0);
+    }
+
+    /**
+     * Provides the ranges of the table and their values, IPv4 ranges first and
+     * in address order.
+     *
+     * @return the ranges and their values
+     */
+    public Map<Cidr, V> toMap() {
+        Map<Cidr, V> map = new LinkedHashMap<Cidr, V>();
+        for (int i = 0; i < cidrs.length; i++) {
+            map.put(cidrs[i], value(i));
+        }
+        return map;
+    }
+
+    @SuppressWarnings("unchecked")
+    private V value(int entry) {
+        return entry < 0 ? null : (V) values[entry];
+    }
+
+    private int find(int node, long high, long low) {
+        int entry = -1;
+        while (-1 < node) {
+            int length = bits[node];
+            if (!isPrefix(highs[node], lows[node], high, low, length)) {
+                break;
+            }
+            if (-1 < entries[node]) {
+                entry = entries[node];
+            }
+            if (length == 128) {
+                break;
+            }
+            node = children[2 * node + bit(high, low, length)];
+        }
+        return entry;
+    }
+
+    /**
+     * Builds the sub-trie of a range of the sorted ranges, which all share the
+     * prefix of the first and last range, up to the shortest prefix length of
+     * the range.
+     */
+    private int build(int from, int to) {
+        if (from == to) {
+            return -1;
+        }
+        long high = high(cidrs[from]);
+        long low = low(cidrs[from]);
+        int length = common(high, low, high(cidrs[to - 1]), low(cidrs[to - 1]));
+        for (int i = from; i < to; i++) {
+            length = Math.min(length, length(cidrs[i]));
+        }
+        int node = count++;
+        highs[node] = high & mask(length);
+        lows[node] = low & mask(length - 64);
+        bits[node] = length;
+        entries[node] = -1;
+        if (length(cidrs[from]) == length) {
+            entries[node] = from++;
+        }
+        int split = from;
+        while (split < to && bit(high(cidrs[split]), low(cidrs[split]), length) == 0) {
+            split++;
+        }
+        int left = build(from, split);
+        int right = build(split, to);
+        children[2 * node] = left;
+        children[2 * node + 1] = right;
+        return node;
+    }
+
+    private static long high(Cidr cidr) {
+        Address address = cidr.getAddress();
+        return address.isIpv4() ? address.getLow() << 32 : address.getHigh();
+    }
+
+    private static long low(Cidr cidr) {
+        return cidr.isIpv4() ? 0 : cidr.getAddress().getLow();
+    }
+
+    private static int length(Cidr cidr) {
+        return cidr.getPrefix();
+    }
+
+    private static int common(long high, long low, long otherHigh, long otherLow) {
+        if (high != otherHigh) {
+            return Long.numberOfLeadingZeros(high ^ otherHigh);
+        }
+        if (low != otherLow) {
+            return 64 + Long.numberOfLeadingZeros(low ^ otherLow);
+        }
+        return 128;
+    }
+
+    private static int bit(long high, long low, int index) {
+        return (int) (index < 64 ? high >>> (63 - index) : low >>> (127 - index)) & 1;
+    }
+
+    /**
+     * Provides a mask of the given number of leading bits of a long, none for
+     * zero or less and all for 64 or more.
+     */
+    static long mask(int length) {
+        return length <= 0 ? 0 : (length < 64 ? -1L << (64 - length) : -1L);
+    }
+
+    /**
+     * Tells whether two 128 bit numbers share the given number of leading bits.
+     */
+    static boolean isPrefix(long high, long low, long otherHigh, long otherLow, int length) {
+        if (length <= 64) {
+            return ((high ^ otherHigh) & mask(length)) == 0;
+        }
+        return high == otherHigh && ((low ^ otherLow) & mask(length - 64)) == 0;
+    }
+
+}
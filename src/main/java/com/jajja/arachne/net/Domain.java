@@ -21,26 +21,12 @@
  */
 package com.jajja.arachne.net;
 
-import java.io.BufferedReader;
-import java.io.File;
-import java.io.FileInputStream;
-import java.io.IOException;
-import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.net.IDN;
-import java.util.Arrays;
-import java.util.Collections;
-import java.util.HashMap;
-import java.util.LinkedList;
-import java.util.List;
-import java.util.Map;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
-import org.apache.commons.logging.Log;
-import org.apache.commons.logging.LogFactory;
-
 import com.jajja.arachne.exceptions.MalformedDomainException;
+import com.jajja.arachne.exceptions.Reason;
 
 /**
  * A class for parsing Internet domains and optionally matching them against the
@@ -55,6 +41,12 @@ import com.jajja.arachne.exceptions.MalformedDomainException;
  * private records (such as *.wordpress.com), and even some ICANN entries that
  * appear to be missing from the public suffix list (such as com.tp).
  *
+ * Domains are immutable and may be shared between threads. The domain is
+ * matched against the public suffix list when first asked for a record, and
+ * keeps that match until the suffix rules are reloaded, when it is matched
+ * again against the reloaded rules, such that domains held by a
+ * {@link HostCache} follow {@link SuffixList#reload()}.
+ *
  * For reference check out: http://publicsuffix.org
  *
  * @author Martin Korinth <martin.korinth@jajja.com>
@@ -62,18 +54,13 @@ import com.jajja.arachne.exceptions.MalformedDomainException;
 public class Domain extends Host {
 
     private final static Pattern deprefixHostPattern = Pattern.compile("^(www|ftp|smtp|mail|pop)[0-9]*\\.", Pattern.CASE_INSENSITIVE);
-    private static Log log = LogFactory.getLog(Domain.class);
-    private static Map<String, List<Rule>> icannRules = Rule.loadIcann();
-    private static Map<String, List<Rule>> privateRules = Rule.loadPrivate();
 
-    private String[] labels;
-    private boolean isMatched = false;
+    private static final AtomicReferenceFieldUpdater<Domain, Match> matchUpdater = AtomicReferenceFieldUpdater.newUpdater(Domain.class, Match.class, "match");
 
-    private String fqdn;
-    private String tld;
-    private Record _icannRegisteredRecord;
-    private Record _subleasedRecord;
-    private String _publicSuffix;
+    private final String fqdn;
+    private final int[] labels;
+    private final int count;
+    private volatile Match match;
 
     /**
      * Creates a domain.
@@ -84,8 +71,61 @@ public class Domain extends Host {
      *             when the domain name can not be parsed as a domain
      */
     public Domain(String name) throws MalformedDomainException {
-        super(IDN.toASCII(name));
-        parse();
+        this(name, Idna.toAscii(name));
+    }
+
+    private Domain(String name, String ascii) throws MalformedDomainException {
+        super(ascii != null ? ascii : name);
+        if (ascii == null)
+            throw new MalformedDomainException(name, Reason.INVALID_INTERNATIONAL_DOMAIN);
+        fqdn = string.toLowerCase();
+        labels = new int[DomainLexer.offsets(fqdn.length())];
+        count = DomainLexer.lex(fqdn, 0, fqdn.length(), labels);
+        if (count < 0)
+            throw new MalformedDomainException(string, DomainLexer.reason(count));
+    }
+
+    private Domain(String ascii, String fqdn, int[] labels, int count) {
+        super(ascii);
+        this.fqdn = fqdn;
+        this.labels = labels;
+        this.count = count;
+    }
+
+    /**
+     * Parses a domain without throwing exceptions for malformed domains.
+     *
+     * @param name
+     *            the domain name
+     * @return the domain, or the reason the name can not be parsed as a domain
+     */
+    public static ParseResult<Domain> tryParse(String name) {
+        String ascii = Idna.toAscii(name);
+        if (ascii == null) {
+            return ParseResult.invalid(Reason.INVALID_INTERNATIONAL_DOMAIN);
+        }
+        String fqdn = ascii.toLowerCase();
+        int[] labels = new int[DomainLexer.offsets(fqdn.length())];
+        int count = DomainLexer.lex(fqdn, 0, fqdn.length(), labels);
+        if (count < 0) {
+            return ParseResult.invalid(DomainLexer.reason(count));
+        }
+        return ParseResult.valid(new Domain(ascii, fqdn, labels, count));
+    }
+
+    /**
+     * Provides a domain, from the cache installed by
+     * {@link Host#setCache(HostCache)} if any.
+     *
+     * @param name
+     *            the domain name
+     * @return the domain
+     * @throws MalformedDomainException
+     *             when the domain name can not be parsed as a domain
+     */
+    public static Domain get(String name) throws MalformedDomainException {
+        HostCache cache = getCache();
+        return cache != null ? cache.getDomain(name) : new Domain(name);
     }
 
     /**
@@ -105,7 +145,7 @@ public class Domain extends Host {
      * @return the top level domain
      */
     public String getTld() {
-        return tld;
+        return fqdn.substring(labels[count - 1], labels[count] - 1);
     }
 
     /**
@@ -114,8 +154,7 @@ public class Domain extends Host {
      * @return the registered record if such exists, otherwise null
      */
     public Record getIcannRegisteredRecord() {
-        match();
-        return _icannRegisteredRecord;
+        return match().icannRegisteredRecord;
     }
 
     /**
@@ -165,8 +204,7 @@ public class Domain extends Host {
      * @return the subleased record if such exists, otherwise null
      */
     public Record getSubleasedRecord() {
-        match();
-        return _subleasedRecord;
+        return match().subleasedRecord;
     }
 
     /**
@@ -267,8 +305,7 @@ public class Domain extends Host {
      * @return the matched public suffix, or null for no matched public suffix
      */
     public String getPublicSuffix() {   // XXX wtf is this for?
-        match();
-        return _publicSuffix;
+        return match().publicSuffix;
     }
 
     public String getDeprefixed() {
@@ -281,55 +318,41 @@ public class Domain extends Host {
         return m.replaceFirst("");
     }
 
-    private void parse() throws MalformedDomainException {
-        fqdn = string.toLowerCase();
-        if (fqdn.isEmpty())
-            throw new MalformedDomainException(string, "Empty domain!");
-        labels = fqdn.split("\\."); // TODO: implement proper string split for performance
-        if (253 < fqdn.length())
-            throw new MalformedDomainException(string, "Too many characters in fully qualified domain name!");
-        if (127 < labels.length)
-            throw new MalformedDomainException(string, "Too many labels in fully qualified domain name!");
-        for (String label : labels) {
-            if (63 < label.length())
-                throw new MalformedDomainException(string, "Too many characters in domain name!");
-            if (!label.matches("[0-9a-z-]+")) // TODO: compile this statically or search manually for performance
-                throw new MalformedDomainException(string, "Invalid charcters in domain name!");
-        }
-        tld = labels[labels.length - 1];
-    }
-
-    private void match() {
-        if (!isMatched) {
-            _icannRegisteredRecord = getRecord(labels, true);
-            if (_icannRegisteredRecord != null) {
-                Record record = getRecord(labels, false);
-                if (record != null && !record.getEntry().equals("www." + _icannRegisteredRecord.getEntry())) {
-                    _subleasedRecord = record;
+    /**
+     * Matches the domain against the current suffix rules, once per snapshot
+     * of the rules. Concurrent calls may match more than once, but all callers
+     * see the match published first.
+     */
+    private Match match() {
+        SuffixRules rules = SuffixList.get();
+        Match match = this.match;
+        if (match == null || match.rules != rules) {
+            Match previous = match;
+            SuffixTrie.Walk walk = new SuffixTrie.Walk();
+            rules.getIcann().match(walk.reset(fqdn, labels, count));
+            String publicSuffix = 0 <= walk.rule ? rules.getIcann().getRule(walk.rule) : null;
+            Record icannRegisteredRecord = record(rules.getIcann(), walk);
+            Record subleasedRecord = null;
+            if (icannRegisteredRecord != null) {
+                int icann = walk.entry;
+                rules.getPrivate().match(walk.reset(fqdn, labels, count));
+                if (0 <= walk.entry && !(walk.entry == icann - 1 && walk.isWww(walk.entry))) {
+                    subleasedRecord = record(rules.getPrivate(), walk);
                 }
             }
-            isMatched = true;
+            match = new Match(rules, icannRegisteredRecord, subleasedRecord, publicSuffix);
+            if (!matchUpdater.compareAndSet(this, previous, match)) {
+                match = this.match;
+            }
         }
+        return match;
     }
 
-    private Record getRecord(String[] labels, boolean isPublic) {
-        Record record = null;
-        List<Rule> rules = isPublic ? icannRules.get(tld) : privateRules.get(tld);
-        if (rules != null) {
-            for (Rule rule : rules) {
-                record = rule.match(labels);
-                if (record != null) {
-                    if (isPublic) {
-                        this._publicSuffix = record.getRule();
-                    }
-                    if (record.getEntry().isEmpty()) {
-                        record = null;
-                    }
-                    break;
-                }
-            }
+    private Record record(SuffixTrie trie, SuffixTrie.Walk walk) {
+        if (walk.entry < 0) {
+            return null;
         }
-        return record;
+        return new Record(fqdn, labels[walk.entry], labels[walk.suffix], labels[count] - 1, trie.getRule(walk.rule));
     }
 
     public static void main(String[] args) {
@@ -350,157 +373,20 @@ public class Domain extends Host {
         }
     }
 
-    private static class Rule implements Comparable<Rule> {
-
-        private String rule;
-
-        private boolean isException;
+    private static class Match {
 
-        private boolean isExact;
+        private final SuffixRules rules;
+        private final Record icannRegisteredRecord;
+        private final Record subleasedRecord;
+        private final String publicSuffix;
 
-        private String[] patterns;
-
-        private Rule(String rule) {
-            this.rule = rule;
-            isException = rule.startsWith("!");
-            isExact = rule.startsWith("?");
-            isException = isException || isExact;
-            patterns = IDN.toASCII(rule.replaceAll("[!?]", "")).split("\\.");
-        }
-
-        Record match(String[] labels) {
-            String entry = "";
-            for (int i = 0; i < Math.min(patterns.length, labels.length); i++) {
-                String pattern = patterns[patterns.length - (i + 1)];
-                String label = labels[labels.length - (i + 1)];
-                if ("*".equals(pattern) || label.equals(pattern)) {
-                    entry = label + (entry.isEmpty() ? "" : '.') + entry;
-                } else {
-                    return null;
-                }
-            }
-            String suffix = null;
-            if (isException) {
-                if (labels.length < patterns.length) {
-                    return null;
-                } else {
-                    if (isExact && labels.length != patterns.length) {
-                        return null;
-                    }
-                    suffix = isExact ? entry.substring(Math.max(0, entry.indexOf('.') + 1)) : entry;
-                }
-            } else {
-                if (patterns.length < labels.length) {
-                    suffix = entry;
-                    entry = labels[labels.length - (patterns.length + 1)] + '.' + entry;
-                } else {
-                    entry = "";
-                }
-            }
-            Record record = new Record();
-            record.setEntry(entry);
-            record.setSuffix(suffix);
-            record.setRule(rule);
-            return record;
-        }
-
-        private String getTld() {
-            return patterns[patterns.length - 1];
-        }
-
-        private int weight() {
-            return patterns.length + (isException ? 255 : 0) + (isExact ? 255 : 0);
-        }
-
-        static Map<String, List<Rule>> loadIcann() {
-            Map<String, List<Rule>> map = new HashMap<String, List<Rule>>();
-            add("/suffix/icann_effective_tld_names.dat", map);
-            add("/suffix/icann_patch_tld_names.dat", map);
-            for (String tld : map.keySet()) {
-                Collections.sort(map.get(tld));
-            }
-            return map;
-        }
-
-        static Map<String, List<Rule>> loadPrivate() {
-            Map<String, List<Rule>> map = new HashMap<String, List<Rule>>();
-            add("/suffix/private_effective_tld_names.dat", map);
-            add("/suffix/private_patch_tld_names.dat", map);
-            for (String tld : map.keySet()) {
-                Collections.sort(map.get(tld));
-            }
-            return map;
-        }
-
-        private static void add(String file,  Map<String, List<Rule>> map) {
-            for (Rule rule : read(file)) {
-                List<Rule> rules = map.get(rule.getTld());
-                if (rules == null) {
-                    rules = new LinkedList<Rule>();
-                    map.put(rule.getTld(), rules);
-                }
-                rules.add(rule);
-            }
-        }
-
-        private static List<Rule> read(String file) {
-            List<Rule> rules = null;
-            try {
-                log.info("Trying file resource for " + file);
-                rules = read(new FileInputStream(new File("/usr/share/arachne" + file)));
-            } catch (Exception e) {
-                log.info("Trying class path resource for effective TLD names " + file);
-                rules = read(Rule.class.getResourceAsStream(file));
-            }
-            return rules != null ? rules : new LinkedList<Rule>();
-        }
-
-        private static List<Rule> read(InputStream inputStream) {
-            BufferedReader bufferedReader = null;
-            List<Rule> rules = new LinkedList<Rule>();
-            try {
-                bufferedReader = new BufferedReader(new InputStreamReader(inputStream, "UTF-8"));
-                String line = null;
-                while ((line = bufferedReader.readLine()) != null) {
-                    if (!line.matches("(\\s+.*)|(/+.*)") && !line.isEmpty()) {
-                        try {
-                            rules.add(new Rule(line.trim()));
-                        } catch (Exception e) {
-                            log.error("Failed to parse public domain suffix rule from line: " + line, e);
-                        }
-                    }
-                }
-            } catch (Exception e) {
-                log.warn("Failed to read line", e);
-            } finally {
-                if (bufferedReader != null) {
-                    try {
-                        bufferedReader.close();
-                    } catch (IOException e) {
-                        log.warn("Failed to close reader", e);
-                    }
-                }
-            }
-            return rules;
-        }
-
-        @Override
-        public int compareTo(Rule rule) {
-            return rule.weight() - weight();
-        }
-
-        @Override
-        public String toString() {
-            StringBuilder builder = new StringBuilder();
-            builder.append("[ definition => ");
-            builder.append(rule);
-            builder.append(", labels => ");
-            builder.append(Arrays.asList(patterns));
-            builder.append(", isException => ");
-            builder.append(isException);
-            builder.append(" ]");
-            return builder.toString();
+        private Match(SuffixRules rules, Record icannRegisteredRecord, Record subleasedRecord, String publicSuffix) {
+            this.rules = rules;
+            this.icannRegisteredRecord = icannRegisteredRecord;
+            this.subleasedRecord = subleasedRecord;
+            this.publicSuffix = publicSuffix;
         }
 
     }
+
 }
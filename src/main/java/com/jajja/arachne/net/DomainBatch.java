@@ -0,0 +1,325 @@
+/*
+ * Copyright (C) 2013 Jajja Communications AB
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.jajja.arachne.net;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.jajja.arachne.exceptions.Reason;
+
+/**
+ * The result of matching a batch of domain names against the public suffix
+ * list, in columnar form: for each name in the batch, the registered domain,
+ * its suffix and matching rule, or the reason the name is malformed.
+ *
+ * Batches are matched in parallel, in chunks submitted to an executor. The
+ * rules are shared and read-only, so matching scales with the number of
+ * threads of the executor. Without a given executor, a shared pool of daemon
+ * threads, one per available processor, is used.
+ *
+ * <pre>
+ * DomainBatch batch = DomainBatch.match(names);
+ * for (int i = 0; i &lt; batch.size(); i++) {
+ *     String registered = batch.getRegistered(i);
+ * }
+ * </pre>
+ *
+ * @author Martin Korinth <martin.korinth@jajja.com>
+ */
+public final class DomainBatch {
+
+    private static final int MIN_CHUNK = 1024;
+    private static ExecutorService pool;
+
+    private final String[] names;
+    private final String[] registered;
+    private final String[] suffixes;
+    private final String[] rules;
+    private final Reason[] failures;
+
+    private DomainBatch(String[] names) {
+        this.names = names;
+        registered = new String[names.length];
+        suffixes = new String[names.length];
+        rules = new String[names.length];
+        failures = new Reason[names.length];
+    }
+
+    /**
+     * Matches domain names using the shared pool.
+     *
+     * @param names
+     *            the domain names
+     * @return the batch of results, in the order of the names
+     * @throws InterruptedException
+     *             when interrupted while waiting for the pool
+     */
+    public static DomainBatch match(String[] names) throws InterruptedException {
+        return match(names, getPool());
+    }
+
+    /**
+     * Matches domain names using the shared pool.
+     *
+     * @param names
+     *            the domain names
+     * @return the batch of results, in the order of iteration
+     * @throws InterruptedException
+     *             when interrupted while waiting for the pool
+     */
+    public static DomainBatch match(Iterable<String> names) throws InterruptedException {
+        return match(names, getPool());
+    }
+
+    /**
+     * Matches domain names using an executor.
+     *
+     * @param names
+     *            the domain names
+     * @param executor
+     *            the executor
+     * @return the batch of results, in the order of iteration
+     * @throws InterruptedException
+     *             when interrupted while waiting for the executor
+     */
+    public static DomainBatch match(Iterable<String> names, ExecutorService executor) throws InterruptedException {
+        List<String> list;
+        if (names instanceof Collection) {
+            list = new ArrayList<String>((Collection<String>) names);
+        } else {
+            list = new ArrayList<String>();
+            for (String name : names) {
+                list.add(name);
+            }
+        }
+        return match(list.toArray(new String[list.size()]), executor);
+    }
+
+    /**
+     * Matches domain names using an executor.
+     *
+     * @param names
+     *            the domain names
+     * @param executor
+     *            the executor
+     * @return the batch of results, in the order of the names
+     * @throws InterruptedException
+     *             when interrupted while waiting for the executor
+     */
+    public static DomainBatch match(String[] names, ExecutorService executor) throws InterruptedException {
+        final DomainBatch batch = new DomainBatch(names);
+        int threads = Runtime.getRuntime().availableProcessors();
+        int chunk = Math.max(MIN_CHUNK, names.length / (4 * threads) + 1);
+        if (names.length <= chunk) {
+            batch.match(0, names.length);
+            return batch;
+        }
+        List<Future<?>> futures = new ArrayList<Future<?>>();
+        try {
+            for (int start = 0; start < names.length; start += chunk) {
+                final int from = start;
+                final int to = Math.min(names.length, start + chunk);
+                futures.add(executor.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() {
+                        batch.match(from, to);
+                        return null;
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            throw cause instanceof RuntimeException ? (RuntimeException) cause : new RuntimeException(cause);
+        } finally {
+            for (Future<?> future : futures) {
+                future.cancel(true);
+            }
+        }
+        return batch;
+    }
+
+    /**
+     * Provides the number of names in the batch.
+     *
+     * @return the number of names
+     */
+    public int size() {
+        return names.length;
+    }
+
+    /**
+     * Provides the names of the batch.
+     *
+     * @return the names
+     */
+    public String[] getNames() {
+        return names;
+    }
+
+    /**
+     * Provides the registered domains of the batch, see
+     * {@link Domain#getRegistered()}.
+     *
+     * @return the registered domains, with null for unregistered or malformed
+     *         names
+     */
+    public String[] getRegistered() {
+        return registered;
+    }
+
+    /**
+     * Provides the suffixes of the registered domains of the batch, see
+     * {@link Domain#getRegisteredSuffix()}.
+     *
+     * @return the suffixes, with null for unregistered or malformed names
+     */
+    public String[] getSuffixes() {
+        return suffixes;
+    }
+
+    /**
+     * Provides the rules matching the registered domains of the batch, see
+     * {@link Domain#getRegisteredRule()}.
+     *
+     * @return the rules, with null for unregistered or malformed names
+     */
+    public String[] getRules() {
+        return rules;
+    }
+
+    /**
+     * Provides the reasons the names of the batch are malformed.
+     *
+     * @return the failures, with null for names that are not malformed
+     */
+    public Reason[] getFailures() {
+        return failures;
+    }
+
+    /**
+     * Provides the registered domain of a name of the batch, see
+     * {@link Domain#getRegistered()}.
+     *
+     * @param index
+     *            the index of the name
+     * @return the registered domain, or null if the name is unregistered or
+     *         malformed
+     */
+    public String getRegistered(int index) {
+        return registered[index];
+    }
+
+    /**
+     * Provides the suffix of the registered domain of a name of the batch,
+     * see {@link Domain#getRegisteredSuffix()}.
+     *
+     * @param index
+     *            the index of the name
+     * @return the suffix, or null if the name is unregistered or malformed
+     */
+    public String getSuffix(int index) {
+        return suffixes[index];
+    }
+
+    /**
+     * Provides the rule matching the registered domain of a name of the
+     * batch, see {@link Domain#getRegisteredRule()}.
+     *
+     * @param index
+     *            the index of the name
+     * @return the rule, or null if the name is unregistered or malformed
+     */
+    public String getRule(int index) {
+        return rules[index];
+    }
+
+    /**
+     * Provides the reason a name of the batch is malformed.
+     *
+     * @param index
+     *            the index of the name
+     * @return the reason, or null if the name is not malformed
+     */
+    public Reason getFailure(int index) {
+        return failures[index];
+    }
+
+    /**
+     * Tells whether a name of the batch is malformed.
+     *
+     * @param index
+     *            the index of the name
+     * @return true if the name is malformed, false otherwise
+     */
+    public boolean isMalformed(int index) {
+        return failures[index] != null;
+    }
+
+    private void match(int from, int to) {
+        for (int i = from; i < to; i++) {
+            String name = names[i];
+            if (name == null) {
+                failures[i] = Reason.EMPTY_DOMAIN;
+                continue;
+            }
+            ParseResult<Domain> result = Domain.tryParse(name);
+            if (!result.isValid()) {
+                failures[i] = result.getReason();
+                continue;
+            }
+            Record record = result.get().getRegisteredRecord();
+            if (record != null) {
+                registered[i] = record.getEntry();
+                suffixes[i] = record.getSuffix();
+                rules[i] = record.getRule();
+            }
+        }
+    }
+
+    private static synchronized ExecutorService getPool() {
+        if (pool == null) {
+            pool = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), new ThreadFactory() {
+                private final AtomicInteger count = new AtomicInteger();
+
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "arachne-domain-batch-" + count.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        return pool;
+    }
+
+}
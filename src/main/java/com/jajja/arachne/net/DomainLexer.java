@@ -0,0 +1,144 @@
+/*
+ * Copyright (C) 2013 Jajja Communications AB
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.jajja.arachne.net;
+
+import com.jajja.arachne.exceptions.Reason;
+
+/**
+ * A single pass validator for ASCII domain names, recording the boundaries of
+ * the labels as offsets into the name rather than splitting it.
+ *
+ * A name is valid if it is at most 253 characters, has at most 127 labels of
+ * at most 63 characters each, and consists of non-empty labels of letters,
+ * digits and hyphens, optionally followed by a single terminating dot.
+ *
+ * @author Martin Korinth <martin.korinth@jajja.com>
+ */
+final class DomainLexer {
+
+    static final int MAX_LENGTH = 253;
+    static final int MAX_LABELS = 127;
+    static final int MAX_LABEL_LENGTH = 63;
+
+    static final int EMPTY = -1;
+    static final int TOO_LONG = -2;
+    static final int TOO_MANY_LABELS = -3;
+    static final int TOO_LONG_LABEL = -4;
+    static final int INVALID_CHARACTERS = -5;
+    static final int INVALID_INTERNATIONAL = -6;
+
+    private DomainLexer() {
+    }
+
+    /**
+     * Provides the size of an offset array sufficient for any name of the
+     * given length.
+     *
+     * @param length
+     *            the length of the name
+     * @return the size of the offset array
+     */
+    static int offsets(int length) {
+        return Math.min(MAX_LABELS, (length + 1) / 2) + 1;
+    }
+
+    /**
+     * Validates a name and records the start of each label. The offset after
+     * the last label is recorded as if the label was followed by a dot, such
+     * that label i spans offsets[i] to offsets[i + 1] - 1.
+     *
+     * @param name
+     *            the name
+     * @param start
+     *            the start of the name
+     * @param end
+     *            the end of the name, exclusive
+     * @param offsets
+     *            the array to record offsets in, of at least the size provided
+     *            by {@link #offsets(int)}, or null to validate only
+     * @return the number of labels, or a negative error code for invalid names
+     */
+    static int lex(CharSequence name, int start, int end, int[] offsets) {
+        int length = end - start;
+        if (length == 0)
+            return EMPTY;
+        if (MAX_LENGTH < length)
+            return TOO_LONG;
+        int count = 0;
+        int label = start;
+        if (offsets != null) {
+            offsets[0] = start;
+        }
+        for (int i = start; i < end; i++) {
+            char c = name.charAt(i);
+            if (c == '.') {
+                if (i == label)
+                    return length == 1 ? EMPTY : INVALID_CHARACTERS;
+                if (MAX_LABEL_LENGTH < i - label)
+                    return TOO_LONG_LABEL;
+                if (++count == MAX_LABELS && i + 1 < end)
+                    return TOO_MANY_LABELS;
+                label = i + 1;
+                if (offsets != null) {
+                    offsets[count] = label;
+                }
+            } else if (!((c >= 'a' && c <= 'z') || (c >= '0' && c <= '9') || c == '-' || (c >= 'A' && c <= 'Z'))) {
+                return INVALID_CHARACTERS;
+            }
+        }
+        if (label < end) {
+            if (MAX_LABEL_LENGTH < end - label)
+                return TOO_LONG_LABEL;
+            if (offsets != null) {
+                offsets[count + 1] = end + 1;
+            }
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * Provides the reason for an error code returned by
+     * {@link #lex(CharSequence, int, int, int[])}.
+     *
+     * @param error
+     *            the error code
+     * @return the reason
+     */
+    static Reason reason(int error) {
+        switch (error) {
+        case EMPTY:
+            return Reason.EMPTY_DOMAIN;
+        case TOO_LONG:
+            return Reason.DOMAIN_TOO_LONG;
+        case TOO_MANY_LABELS:
+            return Reason.TOO_MANY_LABELS;
+        case TOO_LONG_LABEL:
+            return Reason.LABEL_TOO_LONG;
+        case INVALID_INTERNATIONAL:
+            return Reason.INVALID_INTERNATIONAL_DOMAIN;
+        default:
+            return Reason.INVALID_DOMAIN_CHARACTERS;
+        }
+    }
+
+}
@@ -23,6 +23,7 @@ package com.jajja.arachne.net;
 
 import com.jajja.arachne.exceptions.MalformedDomainException;
 import com.jajja.arachne.exceptions.MalformedUriException;
+import com.jajja.arachne.exceptions.Reason;
 
 // XXX: draft, might not make it to the release!
 public class Endpoint {
@@ -33,11 +34,63 @@ public class Endpoint {
 
     public Endpoint(String string) throws MalformedUriException {
         this.string = string;
-        try {
-            parse();
-        } catch (MalformedDomainException e) {
-            throw new MalformedUriException(string, "Failed to parse host!", e);
+        int[] offsets = new int[UrlLexer.OFFSETS];
+        Reason reason = parse(offsets);
+        if (reason != null)
+            throw exception(string, reason, string, offsets);
+    }
+
+    private Endpoint() {
+    }
+
+    /**
+     * Creates an endpoint without parsing it.
+     *
+     * @param string
+     *            the endpoint
+     * @return the unparsed endpoint
+     */
+    static Endpoint unparsed(String string) {
+        Endpoint endpoint = new Endpoint();
+        endpoint.string = string;
+        return endpoint;
+    }
+
+    /**
+     * Parses an endpoint without throwing exceptions for malformed endpoints.
+     *
+     * @param string
+     *            the endpoint, a host optionally followed by a port
+     * @return the endpoint, or the reason the string can not be parsed as an
+     *         endpoint
+     */
+    public static ParseResult<Endpoint> tryParse(String string) {
+        Endpoint endpoint = unparsed(string);
+        Reason reason = endpoint.parse(new int[UrlLexer.OFFSETS]);
+        return reason == null ? ParseResult.valid(endpoint) : ParseResult.<Endpoint>invalid(reason);
+    }
+
+    /**
+     * Creates the exception for an endpoint the lexer rejected, with the
+     * reason of an invalid host as the cause.
+     *
+     * @param endpoint
+     *            the endpoint
+     * @param reason
+     *            the reason of the lexer
+     * @param string
+     *            the string the endpoint was lexed from
+     * @param offsets
+     *            the offsets recorded by the lexer
+     * @return the exception
+     */
+    static MalformedUriException exception(String endpoint, Reason reason, String string, int[] offsets) {
+        if (reason == Reason.INVALID_HOST) {
+            String name = string.substring(offsets[UrlLexer.HOST_START], offsets[UrlLexer.HOST_END]);
+            Reason cause = DomainLexer.reason(offsets[UrlLexer.HOST_ERROR]);
+            return new MalformedUriException(endpoint, reason, new MalformedDomainException(name, cause));
         }
+        return new MalformedUriException(endpoint, reason);
     }
 
     public String getString() {
@@ -56,31 +109,17 @@ public class Endpoint {
         this.port = port;
     }
 
-    private void parse() throws MalformedUriException, MalformedDomainException {
-        int colon = string.lastIndexOf(':');
-        if (string.charAt(0) == '[') {
-            int bracket = string.indexOf(']');
-            if (bracket < 0)
-                throw new MalformedUriException(string, "Unmatched escape bracket in IPv6 endpoint!");
-            if (bracket != colon - 1)
-                throw new MalformedUriException(string, "Expected colon after IPv6 host-part!");
-            if (-1 < string.indexOf('.'))
-                throw new MalformedUriException(string, "Detected escape brackets for non IPv6 host!");
-            host = Host.get(string.substring(1, bracket));
-        } else if (-1 < colon) {
-            host = Host.get(string.substring(0, colon));
-        } else {
-            host = Host.get(string);
-        }
-        if (-1 < colon) {
-            try {
-                port = Integer.parseInt(string.substring(colon + 1));
-            } catch (NumberFormatException e) {
-                throw new MalformedUriException(string, "Invalid port number format!");
-            }
-            if (port < 1 || 65535 < port)
-                throw new MalformedUriException(string, "Port number out of range!");
+    private Reason parse(int[] offsets) {
+        Reason reason = UrlLexer.lexEndpoint(string, 0, string.length(), offsets);
+        if (reason != null)
+            return reason;
+        try {
+            host = Host.get(string.substring(offsets[UrlLexer.HOST_START], offsets[UrlLexer.HOST_END]));
+        } catch (MalformedDomainException e) {
+            return Reason.INVALID_HOST;
         }
+        port = offsets[UrlLexer.PORT] < 0 ? null : Integer.valueOf(offsets[UrlLexer.PORT]);
+        return null;
     }
 
     @Override
@@ -0,0 +1,257 @@
+/*
+ * Copyright (C) 2013 Jajja Communications AB
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.jajja.arachne.net;
+
+/**
+ * A streaming 128-bit MurmurHash3 (x64 variant) of characters appended to it,
+ * encoded as UTF-8. The hash of a string equals the hash of its UTF-8 bytes by
+ * other implementations of MurmurHash3_x64_128 with the same seed, where the
+ * low 64 bits are the first 8 bytes of the hash in little-endian order.
+ *
+ * Fingerprints are stable between versions and platforms, and may be stored.
+ * Fingerprints are reused by resetting them, and are not safe for use by
+ * multiple threads.
+ *
+ * @author Martin Korinth <martin.korinth@jajja.com>
+ */
+public final class Fingerprint implements Appendable {
+
+    private static final long C1 = 0x87c37b91114253d5L;
+    private static final long C2 = 0x4cf5ad432745937fL;
+
+    private final long seed;
+    private long h1;
+    private long h2;
+    private long k1;
+    private long k2;
+    private int position; // of the next byte in the current block
+    private long length;
+    private int highSurrogate;
+
+    /**
+     * Creates a fingerprint with seed 0.
+     */
+    public Fingerprint() {
+        this(0);
+    }
+
+    /**
+     * Creates a fingerprint.
+     *
+     * @param seed
+     *            the seed, as an unsigned integer
+     */
+    public Fingerprint(int seed) {
+        this.seed = seed & 0xffffffffL;
+        reset();
+    }
+
+    /**
+     * Resets the fingerprint to hash nothing.
+     *
+     * @return the fingerprint
+     */
+    public Fingerprint reset() {
+        h1 = seed;
+        h2 = seed;
+        k1 = 0;
+        k2 = 0;
+        position = 0;
+        length = 0;
+        highSurrogate = 0;
+        return this;
+    }
+
+    @Override
+    public Fingerprint append(CharSequence cs) {
+        return append(cs, 0, cs.length());
+    }
+
+    @Override
+    public Fingerprint append(CharSequence cs, int start, int end) {
+        for (int i = start; i < end; i++) {
+            append(cs.charAt(i));
+        }
+        return this;
+    }
+
+    @Override
+    public Fingerprint append(char c) {
+        if (highSurrogate != 0) {
+            char high = (char) highSurrogate;
+            highSurrogate = 0;
+            if (Character.isLowSurrogate(c)) {
+                int cp = Character.toCodePoint(high, c);
+                update(0xf0 | cp >> 18);
+                update(0x80 | cp >> 12 & 0x3f);
+                update(0x80 | cp >> 6 & 0x3f);
+                update(0x80 | cp & 0x3f);
+                return this;
+            }
+            update('?');
+        }
+        if (c < 0x80) {
+            update(c);
+        } else if (c < 0x800) {
+            update(0xc0 | c >> 6);
+            update(0x80 | c & 0x3f);
+        } else if (Character.isHighSurrogate(c)) {
+            highSurrogate = c;
+        } else if (Character.isLowSurrogate(c)) {
+            update('?');
+        } else {
+            update(0xe0 | c >> 12);
+            update(0x80 | c >> 6 & 0x3f);
+            update(0x80 | c & 0x3f);
+        }
+        return this;
+    }
+
+    /**
+     * Appends a byte.
+     *
+     * @param b
+     *            the byte
+     * @return the fingerprint
+     */
+    public Fingerprint update(int b) {
+        long v = b & 0xffL;
+        if (position < 8) {
+            k1 |= v << (position << 3);
+        } else {
+            k2 |= v << ((position - 8) << 3);
+        }
+        length++;
+        if (++position == 16) {
+            h1 ^= mixK1(k1);
+            h1 = Long.rotateLeft(h1, 27) + h2;
+            h1 = h1 * 5 + 0x52dce729;
+            h2 ^= mixK2(k2);
+            h2 = Long.rotateLeft(h2, 31) + h1;
+            h2 = h2 * 5 + 0x38495ab5;
+            k1 = 0;
+            k2 = 0;
+            position = 0;
+        }
+        return this;
+    }
+
+    /**
+     * Provides the low 64 bits of the hash of what has been appended, which
+     * is a 64-bit hash in its own right.
+     *
+     * @return the 64-bit hash
+     */
+    public long getLow() {
+        long[] hash = new long[2];
+        finish(hash);
+        return hash[1];
+    }
+
+    /**
+     * Provides the high 64 bits of the hash of what has been appended.
+     *
+     * @return the high 64 bits
+     */
+    public long getHigh() {
+        long[] hash = new long[2];
+        finish(hash);
+        return hash[0];
+    }
+
+    /**
+     * Provides the 128-bit hash of what has been appended, without resetting
+     * the fingerprint.
+     *
+     * @param hash
+     *            an array of at least two longs, for the high and low 64 bits
+     * @return the array
+     */
+    public long[] get(long[] hash) {
+        finish(hash);
+        return hash;
+    }
+
+    private void finish(long[] hash) {
+        long h1 = this.h1;
+        long h2 = this.h2;
+        long length = this.length;
+        if (highSurrogate != 0) {
+            // an unpaired surrogate at the end, hashed as '?'
+            Fingerprint copy = copy();
+            copy.highSurrogate = 0;
+            copy.update('?');
+            copy.finish(hash);
+            return;
+        }
+        if (8 < position) {
+            h2 ^= mixK2(k2);
+        }
+        if (0 < position) {
+            h1 ^= mixK1(k1);
+        }
+        h1 ^= length;
+        h2 ^= length;
+        h1 += h2;
+        h2 += h1;
+        h1 = fmix(h1);
+        h2 = fmix(h2);
+        h1 += h2;
+        h2 += h1;
+        hash[0] = h2;
+        hash[1] = h1;
+    }
+
+    private Fingerprint copy() {
+        Fingerprint copy = new Fingerprint();
+        copy.h1 = h1;
+        copy.h2 = h2;
+        copy.k1 = k1;
+        copy.k2 = k2;
+        copy.position = position;
+        copy.length = length;
+        copy.highSurrogate = highSurrogate;
+        return copy;
+    }
+
+    private static long mixK1(long k1) {
+        k1 *= C1;
+        k1 = Long.rotateLeft(k1, 31);
+        return k1 * C2;
+    }
+
+    private static long mixK2(long k2) {
+        k2 *= C2;
+        k2 = Long.rotateLeft(k2, 33);
+        return k2 * C1;
+    }
+
+    private static long fmix(long k) {
+        k ^= k >>> 33;
+        k *= 0xff51afd7ed558ccdL;
+        k ^= k >>> 33;
+        k *= 0xc4ceb9fe1a85ec53L;
+        k ^= k >>> 33;
+        return k;
+    }
+
+}
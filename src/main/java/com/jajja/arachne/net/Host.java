@@ -32,6 +32,22 @@ import com.jajja.arachne.exceptions.MalformedDomainException;
  */
 public abstract class Host {
 
+    /**
+     * The kinds of host names told apart by {@link Host#classify(String)}.
+     */
+    public enum Type {
+        /** An IPv4 address, such as 127.0.0.1. */
+        IPV4,
+        /** An IPv6 address, such as ::1. */
+        IPV6,
+        /** A domain name, such as www.example.com. */
+        DOMAIN,
+        /** Neither an address nor a legal domain name. */
+        INVALID
+    }
+
+    private static volatile HostCache cache;
+
     /**
      * Facilitates creation of a host according to the given string
      * representation of a host, such as hostname or address string literal.
@@ -44,11 +60,115 @@ public abstract class Host {
      *             legal domain.
      */
     public static Host get(String string) throws MalformedDomainException {
-        try {
-            return new Address(string);
-        } catch (MalformedAddressException e) {
-            return new Domain(string);
+        HostCache cache = Host.cache;
+        return cache != null ? cache.get(string) : parse(string);
+    }
+
+    /**
+     * Installs a cache of hosts to be used by {@link #get(String)} and
+     * {@link Domain#get(String)}, or uninstalls the cache.
+     *
+     * @param cache
+     *            the cache, or null for no cache
+     */
+    public static void setCache(HostCache cache) {
+        Host.cache = cache;
+    }
+
+    /**
+     * Provides the installed cache of hosts.
+     *
+     * @return the cache, or null if no cache is installed
+     */
+    public static HostCache getCache() {
+        return cache;
+    }
+
+    /**
+     * Tells what kind of host a host name represents, in the same way as
+     * {@link #get(String)} but without creating the host. No exceptions are
+     * thrown, and no objects are created unless the name is an international
+     * domain name.
+     *
+     * @param name
+     *            the host name
+     * @return the kind of host
+     */
+    public static Type classify(String name) {
+        return classify(name, 0, name.length());
+    }
+
+    /**
+     * Tells what kind of host a range of characters represents, see
+     * {@link #classify(String)}.
+     *
+     * @param name
+     *            the characters containing the host name
+     * @param start
+     *            the start of the host name
+     * @param end
+     *            the end of the host name, exclusive
+     * @return the kind of host
+     */
+    static Type classify(CharSequence name, int start, int end) {
+        int family = AddressLexer.family(name, start, end);
+        if (family == 4 && 0 <= AddressLexer.lexIpv4(name, start, end, false)) {
+            return Type.IPV4;
+        }
+        if (family == 6 && 0 <= AddressLexer.lexIpv6(name, start, end, null)) {
+            return Type.IPV6;
+        }
+        return 0 <= lexDomain(name, start, end) ? Type.DOMAIN : Type.INVALID;
+    }
+
+    /**
+     * Validates a range of characters as a host name, like
+     * {@link #classify(CharSequence, int, int)}, but telling why a name is
+     * invalid.
+     *
+     * @param name
+     *            the characters containing the host name
+     * @param start
+     *            the start of the host name
+     * @param end
+     *            the end of the host name, exclusive
+     * @return a non-negative number for an address or a domain, or a negative
+     *         error code of {@link DomainLexer} for an invalid name
+     */
+    static int validate(CharSequence name, int start, int end) {
+        int family = AddressLexer.family(name, start, end);
+        if (family == 4 && 0 <= AddressLexer.lexIpv4(name, start, end, false)) {
+            return 0;
+        }
+        if (family == 6 && 0 <= AddressLexer.lexIpv6(name, start, end, null)) {
+            return 0;
+        }
+        return lexDomain(name, start, end);
+    }
+
+    private static int lexDomain(CharSequence name, int start, int end) {
+        for (int i = start; i < end; i++) {
+            if (0x7f < name.charAt(i)) {
+                String ascii = Idna.toAscii(name.subSequence(start, end).toString());
+                if (ascii == null) {
+                    return DomainLexer.INVALID_INTERNATIONAL;
+                }
+                return DomainLexer.lex(ascii, 0, ascii.length(), null);
+            }
+        }
+        return DomainLexer.lex(name, start, end, null);
+    }
+
+    static Host parse(String string) throws MalformedDomainException {
+        Type type = classify(string);
+        if (type == Type.IPV4 || type == Type.IPV6) {
+            try {
+                return new Address(string);
+            } catch (MalformedAddressException e) {
+                // can not happen, as the name is classified as an address
+            }
         }
+        return new Domain(string);
     }
 
     /**
@@ -0,0 +1,296 @@
+/*
+ * Copyright (C) 2013 Jajja Communications AB
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.jajja.arachne.net;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import com.jajja.arachne.exceptions.MalformedDomainException;
+
+/**
+ * A bounded, concurrent cache of parsed hosts keyed by host name.
+ *
+ * The cache is split into segments, each guarded by its own lock and managed
+ * as a segmented LRU: hosts enter a probationary segment and are promoted to a
+ * protected segment when hit again, so a scan of hosts seen only once can not
+ * evict the frequently seen hosts. Hits, misses and evictions are counted to
+ * allow for tuning the capacity.
+ *
+ * A cache can be installed with {@link Host#setCache(HostCache)}, to be used by
+ * {@link Host#get(String)} and {@link Domain#get(String)}, and thereby by
+ * {@link Url} and {@link Endpoint}.
+ *
+ * @author Martin Korinth <martin.korinth@jajja.com>
+ */
+public class HostCache {
+
+    private static final int PROTECTED_PERCENT = 80;
+    private static final int MINIMUM_PER_SEGMENT = 8;
+
+    private final Segment[] segments;
+    private final int mask;
+
+    /**
+     * Creates a cache with up to 16 segments.
+     *
+     * @param capacity
+     *            the maximum number of hosts
+     */
+    public HostCache(int capacity) {
+        this(capacity, 16);
+    }
+
+    /**
+     * Creates a cache.
+     *
+     * @param capacity
+     *            the maximum number of hosts
+     * @param concurrency
+     *            the estimated number of concurrently accessing threads, which
+     *            is rounded up to a power of two segments, limited so that
+     *            each segment holds at least 8 hosts
+     */
+    public HostCache(int capacity, int concurrency) {
+        if (capacity < 1)
+            throw new IllegalArgumentException("Capacity must be positive!");
+        int limit = Math.max(1, capacity / MINIMUM_PER_SEGMENT);
+        int size = 1;
+        while (size < concurrency && size << 1 <= limit) {
+            size <<= 1;
+        }
+        segments = new Segment[size];
+        for (int i = 0; i < size; i++) {
+            segments[i] = new Segment(capacity / size + (i < capacity % size ? 1 : 0));
+        }
+        mask = size - 1;
+    }
+
+    /**
+     * Provides the cached host for a host name, parsing and caching it if
+     * absent.
+     *
+     * @param name
+     *            the host name
+     * @return the host
+     * @throws MalformedDomainException
+     *             when the name can not be resolved as an address and is not a
+     *             legal domain
+     */
+    public Host get(String name) throws MalformedDomainException {
+        Segment segment = segment(name);
+        Host host = segment.get(name);
+        if (host == null) {
+            host = Host.parse(name);
+            segment.put(name, host);
+        }
+        return host;
+    }
+
+    /**
+     * Provides the cached domain for a domain name, parsing and caching it if
+     * absent. A name cached as an address is parsed as a domain without being
+     * cached.
+     *
+     * @param name
+     *            the domain name
+     * @return the domain
+     * @throws MalformedDomainException
+     *             when the domain name can not be parsed as a domain
+     */
+    public Domain getDomain(String name) throws MalformedDomainException {
+        Segment segment = segment(name);
+        Host host = segment.get(name);
+        if (host instanceof Domain) {
+            return (Domain) host;
+        }
+        Domain domain = new Domain(name);
+        if (host == null) {
+            segment.put(name, domain);
+        }
+        return domain;
+    }
+
+    /**
+     * Provides the number of cached hosts.
+     *
+     * @return the number of cached hosts
+     */
+    public int size() {
+        int size = 0;
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                size += segment.probation.size() + segment.protect.size();
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Removes all cached hosts, keeping the statistics.
+     */
+    public void clear() {
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                segment.probation.clear();
+                segment.protect.clear();
+            }
+        }
+    }
+
+    /**
+     * Provides the number of lookups that found a cached host.
+     *
+     * @return the number of hits
+     */
+    public long getHits() {
+        long hits = 0;
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                hits += segment.hits;
+            }
+        }
+        return hits;
+    }
+
+    /**
+     * Provides the number of lookups that did not find a cached host.
+     *
+     * @return the number of misses
+     */
+    public long getMisses() {
+        long misses = 0;
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                misses += segment.misses;
+            }
+        }
+        return misses;
+    }
+
+    /**
+     * Provides the number of hosts evicted to stay within the capacity.
+     *
+     * @return the number of evictions
+     */
+    public long getEvictions() {
+        long evictions = 0;
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                evictions += segment.evictions;
+            }
+        }
+        return evictions;
+    }
+
+    /**
+     * Provides the ratio of lookups that found a cached host.
+     *
+     * @return the hit rate, or 0 if there were no lookups
+     */
+    public double getHitRate() {
+        long hits = getHits();
+        long lookups = hits + getMisses();
+        return lookups == 0 ? 0 : (double) hits / lookups;
+    }
+
+    /**
+     * Resets the hit, miss and eviction counts.
+     */
+    public void resetStatistics() {
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                segment.hits = 0;
+                segment.misses = 0;
+                segment.evictions = 0;
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "{ size => " + size() + ", hits => " + getHits() + ", misses => " + getMisses()
+                + ", evictions => " + getEvictions() + " }";
+    }
+
+    private Segment segment(String name) {
+        int hash = name.hashCode();
+        hash ^= (hash >>> 16);
+        return segments[hash & mask];
+    }
+
+    private static class Segment {
+
+        private final int capacity;
+        private final int protectedCapacity;
+        private final LinkedHashMap<String, Host> probation = new LinkedHashMap<String, Host>(16, 0.75f, true);
+        private final LinkedHashMap<String, Host> protect = new LinkedHashMap<String, Host>(16, 0.75f, true);
+        private long hits;
+        private long misses;
+        private long evictions;
+
+        private Segment(int capacity) {
+            this.capacity = capacity;
+            protectedCapacity = capacity * PROTECTED_PERCENT / 100;
+        }
+
+        private synchronized Host get(String name) {
+            Host host = protect.get(name);
+            if (host == null) {
+                host = probation.remove(name);
+                if (host != null) {
+                    protect.put(name, host);
+                    if (protectedCapacity < protect.size()) {
+                        Map.Entry<String, Host> eldest = eldest(protect);
+                        probation.put(eldest.getKey(), eldest.getValue());
+                    }
+                }
+            }
+            if (host != null) {
+                hits++;
+            } else {
+                misses++;
+            }
+            return host;
+        }
+
+        private synchronized void put(String name, Host host) {
+            if (protect.containsKey(name) || probation.containsKey(name)) {
+                return;
+            }
+            probation.put(name, host);
+            if (capacity < probation.size() + protect.size()) {
+                eldest(probation.isEmpty() ? protect : probation);
+                evictions++;
+            }
+        }
+
+        private static Map.Entry<String, Host> eldest(LinkedHashMap<String, Host> map) {
+            Iterator<Map.Entry<String, Host>> iterator = map.entrySet().iterator();
+            Map.Entry<String, Host> eldest = iterator.next();
+            iterator.remove();
+            return eldest;
+        }
+
+    }
+
+}
@@ -0,0 +1,262 @@
+/*
+ * Copyright (C) 2013 Jajja Communications AB
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.jajja.arachne.net;
+
+import com.jajja.arachne.exceptions.MalformedDomainException;
+
+/**
+ * A compact binary encoding of hosts, for use as keys in sorted key-value
+ * stores. Keys compare as unsigned bytes, see {@link #compare(byte[], byte[])},
+ * and sort IPv4 addresses first, then IPv6 addresses, then domains.
+ *
+ * Each key starts with a tag byte for the kind of host. An address follows as
+ * its bytes in network order, so that addresses sort numerically. A domain
+ * follows as its labels in reverse order, each terminated by a zero byte, so
+ * that "www.example.com" is encoded as "com\0example\0www\0" and all hosts
+ * under a registered domain share the key of the registered domain as prefix,
+ * see {@link #getRegisteredPrefix(Domain)}.
+ *
+ * Domains are encoded in their lowercase ASCII form, without any terminating
+ * dot, and addresses without any comment. Keys round-trip to equal hosts
+ * otherwise.
+ *
+ * @author Martin Korinth <martin.korinth@jajja.com>
+ */
+public final class HostKey {
+
+    /** The tag of IPv4 address keys. */
+    public static final byte IPV4 = 1;
+    /** The tag of IPv6 address keys. */
+    public static final byte IPV6 = 2;
+    /** The tag of domain keys. */
+    public static final byte DOMAIN = 3;
+
+    private HostKey() {
+    }
+
+    /**
+     * Provides the length of the key of a host.
+     *
+     * @param host
+     *            the host
+     * @return the length of the key in bytes
+     */
+    public static int length(Host host) {
+        if (host instanceof Address) {
+            return ((Address) host).isIpv4() ? 5 : 17;
+        }
+        String fqdn = ((Domain) host).getFqdn();
+        return 2 + end(fqdn);
+    }
+
+    /**
+     * Encodes the key of a host.
+     *
+     * @param host
+     *            the host
+     * @return the key
+     */
+    public static byte[] encode(Host host) {
+        byte[] key = new byte[length(host)];
+        encode(host, key, 0);
+        return key;
+    }
+
+    /**
+     * Encodes the key of a host into a buffer.
+     *
+     * @param host
+     *            the host
+     * @param buffer
+     *            the buffer, with room for at least {@link #length(Host)}
+     *            bytes from the offset
+     * @param offset
+     *            the offset to encode the key at
+     * @return the offset after the key
+     */
+    public static int encode(Host host, byte[] buffer, int offset) {
+        if (host instanceof Address) {
+            Address address = (Address) host;
+            if (address.isIpv4()) {
+                buffer[offset] = IPV4;
+                return write(address.getLow(), buffer, offset + 1, 4);
+            }
+            buffer[offset] = IPV6;
+            offset = write(address.getHigh(), buffer, offset + 1, 8);
+            return write(address.getLow(), buffer, offset, 8);
+        }
+        String fqdn = ((Domain) host).getFqdn();
+        buffer[offset] = DOMAIN;
+        return reverse(fqdn, 0, end(fqdn), buffer, offset + 1);
+    }
+
+    /**
+     * Provides the key prefix shared by the registered domain of a domain and
+     * all domains under it, suitable for range scans. The prefix is the key
+     * of the registered domain itself.
+     *
+     * @param domain
+     *            the domain
+     * @return the prefix, or null if the domain is not registered
+     */
+    public static byte[] getRegisteredPrefix(Domain domain) {
+        Record record = domain.getRegisteredRecord();
+        if (record == null) {
+            return null;
+        }
+        String fqdn = domain.getFqdn();
+        int end = end(fqdn);
+        int start = end - record.getEntryLength();
+        byte[] prefix = new byte[2 + end - start];
+        prefix[0] = DOMAIN;
+        reverse(fqdn, start, end, prefix, 1);
+        return prefix;
+    }
+
+    /**
+     * Decodes the host of a key.
+     *
+     * @param key
+     *            the key
+     * @return the host
+     * @throws IllegalArgumentException
+     *             when the key is not a key of a host
+     */
+    public static Host decode(byte[] key) {
+        return decode(key, 0, key.length);
+    }
+
+    /**
+     * Decodes the host of a key in a range of bytes.
+     *
+     * @param buffer
+     *            the bytes containing the key
+     * @param offset
+     *            the offset of the key
+     * @param length
+     *            the length of the key
+     * @return the host
+     * @throws IllegalArgumentException
+     *             when the bytes are not a key of a host
+     */
+    public static Host decode(byte[] buffer, int offset, int length) {
+        if (0 < length) {
+            switch (buffer[offset]) {
+            case IPV4:
+                if (length == 5) {
+                    return Address.valueOf((int) read(buffer, offset + 1, 4));
+                }
+                break;
+            case IPV6:
+                if (length == 17) {
+                    return Address.valueOf(read(buffer, offset + 1, 8), read(buffer, offset + 9, 8));
+                }
+                break;
+            case DOMAIN:
+                if (2 < length && buffer[offset + length - 1] == 0) {
+                    try {
+                        return new Domain(unreverse(buffer, offset + 1, offset + length - 1));
+                    } catch (MalformedDomainException e) {
+                        throw new IllegalArgumentException("Malformed domain key: " + e.getMessage(), e);
+                    }
+                }
+                break;
+            }
+        }
+        throw new IllegalArgumentException("Not a host key!");
+    }
+
+    /**
+     * Compares keys as unsigned bytes, the order of keys in sorted stores.
+     *
+     * @param key
+     *            a key
+     * @param other
+     *            another key
+     * @return a negative number, zero or a positive number as the key is less
+     *         than, equal to or greater than the other key
+     */
+    public static int compare(byte[] key, byte[] other) {
+        int length = Math.min(key.length, other.length);
+        for (int i = 0; i < length; i++) {
+            int comparison = (key[i] & 0xff) - (other[i] & 0xff);
+            if (comparison != 0) {
+                return comparison;
+            }
+        }
+        return key.length - other.length;
+    }
+
+    private static int end(String fqdn) {
+        int end = fqdn.length();
+        return 0 < end && fqdn.charAt(end - 1) == '.' ? end - 1 : end;
+    }
+
+    private static int reverse(String name, int start, int end, byte[] buffer, int offset) {
+        int label = end;
+        for (int i = end - 1; start - 1 <= i; i--) {
+            if (i < start || name.charAt(i) == '.') {
+                for (int j = i + 1; j < label; j++) {
+                    buffer[offset++] = (byte) name.charAt(j);
+                }
+                buffer[offset++] = 0;
+                label = i;
+            }
+        }
+        return offset;
+    }
+
+    private static String unreverse(byte[] buffer, int start, int end) {
+        char[] name = new char[end - start];
+        int position = 0;
+        int label = end;
+        for (int i = end - 1; start - 1 <= i; i--) {
+            if (i < start || buffer[i] == 0) {
+                if (label < end) {
+                    name[position++] = '.';
+                }
+                for (int j = i + 1; j < label; j++) {
+                    name[position++] = (char) (buffer[j] & 0xff);
+                }
+                label = i;
+            }
+        }
+        return new String(name, 0, position);
+    }
+
+    private static int write(long bits, byte[] buffer, int offset, int length) {
+        for (int i = offset + length - 1; offset <= i; i--) {
+            buffer[i] = (byte) bits;
+            bits >>>= 8;
+        }
+        return offset + length;
+    }
+
+    private static long read(byte[] buffer, int offset, int length) {
+        long bits = 0;
+        for (int i = offset; i < offset + length; i++) {
+            bits = (bits << 8) | (buffer[i] & 0xff);
+        }
+        return bits;
+    }
+
+}
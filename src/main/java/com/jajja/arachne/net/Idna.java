@@ -0,0 +1,192 @@
+/*
+ * Copyright (C) 2013 Jajja Communications AB
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.jajja.arachne.net;
+
+import java.text.Normalizer;
+import java.util.Locale;
+
+/**
+ * Conversion of international domain names between Unicode and the ASCII form
+ * used on the wire, as a faster replacement for {@link java.net.IDN}.
+ *
+ * Names that are already ASCII are returned as is, without any copying. Other
+ * names are mapped in the manner of UTS #46: label separators and ignored code
+ * points are looked up in tables, and the remaining characters are case folded
+ * and normalized to NFKC. Labels that are not ASCII after mapping are encoded
+ * with {@link Punycode} and prefixed with "xn--". Deviation characters, such
+ * as "\u00df", are kept rather than mapped, as in non-transitional processing.
+ *
+ * Validation of the resulting ASCII name is left to {@link Domain}.
+ *
+ * @author Martin Korinth <martin.korinth@jajja.com>
+ */
+public final class Idna {
+
+    static final String ACE_PREFIX = "xn--";
+
+    /**
+     * Code points mapped to the full stop, i.e. separating labels.
+     */
+    private static final char[] SEPARATORS = { '\u3002', '\uff0e', '\uff61' };
+
+    /**
+     * Ranges of code points mapped to nothing, as pairs of first and last code
+     * point, in ascending order.
+     */
+    private static final char[] IGNORED = {
+            '\u00ad', '\u00ad', // soft hyphen
+            '\u034f', '\u034f', // combining grapheme joiner
+            '\u180b', '\u180d', // mongolian free variation selectors
+            '\u200b', '\u200b', // zero width space
+            '\u2060', '\u2060', // word joiner
+            '\ufe00', '\ufe0f', // variation selectors
+            '\ufeff', '\ufeff', // zero width no-break space
+    };
+
+    private Idna() {
+    }
+
+    /**
+     * Converts a domain name to its ASCII form.
+     *
+     * @param name
+     *            the domain name
+     * @return the ASCII form of the name, or null if the name can not be
+     *         converted
+     */
+    public static String toAscii(String name) {
+        int length = name.length();
+        int i = 0;
+        while (i < length && name.charAt(i) < 0x80) {
+            i++;
+        }
+        if (i == length) {
+            return name;
+        }
+        char[] mapped = map(name);
+        StringBuilder builder = new StringBuilder(mapped.length + 16);
+        int label = 0;
+        for (int j = 0; j <= mapped.length; j++) {
+            if (j == mapped.length || mapped[j] == '.') {
+                if (!encode(mapped, label, j, builder))
+                    return null;
+                if (j < mapped.length) {
+                    builder.append('.');
+                }
+                label = j + 1;
+            }
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Converts a domain name to its Unicode form for display, decoding labels
+     * with the "xn--" prefix. Labels that can not be decoded are kept as is.
+     *
+     * @param name
+     *            the domain name
+     * @return the Unicode form of the name
+     */
+    public static String toUnicode(String name) {
+        if (name.toLowerCase(Locale.ENGLISH).indexOf(ACE_PREFIX) < 0) {
+            return name;
+        }
+        char[] chars = name.toCharArray();
+        StringBuilder builder = new StringBuilder(chars.length);
+        int label = 0;
+        for (int j = 0; j <= chars.length; j++) {
+            if (j == chars.length || chars[j] == '.') {
+                int mark = builder.length();
+                if (!isAce(chars, label, j) || !Punycode.decode(chars, label + ACE_PREFIX.length(), j, builder)) {
+                    builder.setLength(mark);
+                    builder.append(chars, label, j - label);
+                }
+                if (j < chars.length) {
+                    builder.append('.');
+                }
+                label = j + 1;
+            }
+        }
+        return builder.toString();
+    }
+
+    private static char[] map(String name) {
+        StringBuilder builder = new StringBuilder(name.length());
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            if (isSeparator(c)) {
+                builder.append('.');
+            } else if (!isIgnored(c)) {
+                builder.append(c);
+            }
+        }
+        String mapped = builder.toString().toLowerCase(Locale.ENGLISH);
+        mapped = Normalizer.normalize(mapped, Normalizer.Form.NFKC);
+        mapped = mapped.toLowerCase(Locale.ENGLISH);
+        for (char separator : SEPARATORS) {
+            mapped = mapped.replace(separator, '.');
+        }
+        return mapped.toCharArray();
+    }
+
+    private static boolean encode(char[] mapped, int start, int end, StringBuilder builder) {
+        for (int i = start; i < end; i++) {
+            if (0x80 <= mapped[i]) {
+                builder.append(ACE_PREFIX);
+                return Punycode.encode(mapped, start, end, builder);
+            }
+        }
+        builder.append(mapped, start, end - start);
+        return true;
+    }
+
+    private static boolean isAce(char[] chars, int start, int end) {
+        return ACE_PREFIX.length() < end - start
+                && (chars[start] | 0x20) == 'x' && (chars[start + 1] | 0x20) == 'n'
+                && chars[start + 2] == '-' && chars[start + 3] == '-';
+    }
+
+    private static boolean isSeparator(char c) {
+        for (char separator : SEPARATORS) {
+            if (c == separator) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isIgnored(char c) {
+        if (c < IGNORED[0]) {
+            return false;
+        }
+        for (int i = 0; i < IGNORED.length; i += 2) {
+            if (c < IGNORED[i]) {
+                return false;
+            }
+            if (c <= IGNORED[i + 1]) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+}
@@ -21,8 +21,7 @@
  */
 package com.jajja.arachne.net;
 
-import java.io.UnsupportedEncodingException;
-import java.net.URLEncoder;
+import com.jajja.arachne.net.PercentCodec.Component;
 
 public class Parameter {
 
@@ -57,18 +56,20 @@ public class Parameter {
 
     @Override
 	public String toString() {
-        if (this.name == null && value == null) {
+        return toString(name, value);
+    }
+
+    static String toString(String name, String value) {
+        if (name == null && value == null) {
             return "";
         }
-    	if (value == null) {
-    		return this.name;
-    	}
-    	String name = (this.name == null) ? "" : this.name;
-    	try {
-			return name + "=" + URLEncoder.encode(value, "UTF-8");
-		} catch (UnsupportedEncodingException e) {
-			return name + "=" + value;
-		}
+        if (value == null) {
+            return name;
+        }
+        if (name == null) {
+            name = "";
+        }
+        return name + "=" + PercentCodec.encode(value, Component.FORM);
     }
 
 }
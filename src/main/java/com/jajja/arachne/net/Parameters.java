@@ -0,0 +1,563 @@
+/*
+ * Copyright (C) 2013 Jajja Communications AB
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.jajja.arachne.net;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * An ordered multimap of query parameters, held as flat arrays of names and
+ * values. Lookups by name scan the arrays while there are few parameters, and
+ * use an open addressing index of the names, chaining the positions of each
+ * name, once there are more than {@value #INDEX_THRESHOLD}.
+ *
+ * The list views provided by {@link #asList()} and {@link #getAll(String)}
+ * read through to the arrays rather than copying them. Parameters read from
+ * {@link #asList()} write through to the multimap while they remain in it.
+ *
+ * @author Martin Korinth <martin.korinth@jajja.com>
+ */
+public final class Parameters implements Iterable<Parameter> {
+
+    /** The number of parameters above which names are indexed. */
+    static final int INDEX_THRESHOLD = 8;
+
+    private String[] names;
+    private String[] values;
+    private int size;
+    private int[] slots; // first position of a name + 1, or 0 for empty slots
+    private int[] tails; // last position of the name of a slot
+    private int[] next; // next position of the same name, or -1
+    private Entry[] entries; // parameters read from the list view, by position
+    private int modifications;
+    private final AtomicInteger shares = new AtomicInteger(); // holders besides the first, see share()
+
+    /**
+     * Creates an empty multimap.
+     */
+    public Parameters() {
+        this(4);
+    }
+
+    private Parameters(int capacity) {
+        names = new String[capacity];
+        values = new String[capacity];
+    }
+
+    /**
+     * Creates a copy of a multimap.
+     *
+     * @param parameters
+     *            the multimap to copy
+     */
+    public Parameters(Parameters parameters) {
+        size = parameters.size;
+        names = Arrays.copyOf(parameters.names, Math.max(4, size));
+        values = Arrays.copyOf(parameters.values, Math.max(4, size));
+        if (parameters.slots != null) {
+            slots = parameters.slots.clone();
+            tails = parameters.tails.clone();
+            next = Arrays.copyOf(parameters.next, names.length);
+        }
+    }
+
+    /**
+     * Counts another holder of the multimap, such as a copy of a URL. Shared
+     * multimaps are not modified, but copied by {@link #unshare()} by each
+     * holder about to modify it, until a single holder remains.
+     *
+     * @return this multimap
+     */
+    Parameters share() {
+        shares.incrementAndGet();
+        return this;
+    }
+
+    /**
+     * Provides a multimap for a holder to modify, this multimap if it has no
+     * other holders, otherwise a copy, after which the holder is no longer
+     * counted as holding this multimap.
+     *
+     * @return the multimap to modify
+     */
+    Parameters unshare() {
+        for (;;) {
+            int count = shares.get();
+            if (count == 0) {
+                return this;
+            }
+            Parameters copy = new Parameters(this); // copied while no holder may modify it
+            if (shares.compareAndSet(count, count - 1)) {
+                return copy;
+            }
+        }
+    }
+
+    /**
+     * Stops counting a holder that no longer uses the multimap.
+     */
+    void release() {
+        for (;;) {
+            int count = shares.get();
+            if (count == 0 || shares.compareAndSet(count, count - 1)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Provides the number of parameters.
+     *
+     * @return the number of parameters
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Tells whether there are no parameters.
+     *
+     * @return true if there are no parameters, false otherwise
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Provides the name of a parameter.
+     *
+     * @param index
+     *            the position of the parameter
+     * @return the name
+     */
+    public String getName(int index) {
+        check(index, size);
+        return names[index];
+    }
+
+    /**
+     * Provides the value of a parameter.
+     *
+     * @param index
+     *            the position of the parameter
+     * @return the value, or null for a parameter without value
+     */
+    public String getValue(int index) {
+        check(index, size);
+        return values[index];
+    }
+
+    /**
+     * Provides the position of the first parameter of a name.
+     *
+     * @param name
+     *            the name
+     * @return the position, or -1 if there is no parameter of the name
+     */
+    public int indexOf(String name) {
+        if (slots != null) {
+            int slot = slot(name);
+            return slots[slot] - 1;
+        }
+        for (int i = 0; i < size; i++) {
+            if (equals(names[i], name)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Tells whether there is a parameter of a name.
+     *
+     * @param name
+     *            the name
+     * @return true if there is a parameter of the name, false otherwise
+     */
+    public boolean contains(String name) {
+        return -1 < indexOf(name);
+    }
+
+    /**
+     * Provides the value of the first parameter of a name.
+     *
+     * @param name
+     *            the name
+     * @return the value, or null if there is no parameter of the name or it
+     *         has no value
+     */
+    public String get(String name) {
+        int index = indexOf(name);
+        return index < 0 ? null : values[index];
+    }
+
+    /**
+     * Provides the values of the parameters of a name, in order, as a view
+     * that reads through to this multimap. The view fails with a
+     * {@link ConcurrentModificationException} once the multimap is modified.
+     *
+     * @param name
+     *            the name
+     * @return the values
+     */
+    public List<String> getAll(String name) {
+        final int[] positions = positions(name);
+        final int expected = modifications;
+        return new AbstractList<String>() {
+            @Override
+            public String get(int index) {
+                checkModifications();
+                check(index, positions.length);
+                return values[positions[index]];
+            }
+
+            @Override
+            public int size() {
+                checkModifications();
+                return positions.length;
+            }
+
+            private void checkModifications() {
+                if (modifications != expected) {
+                    throw new ConcurrentModificationException();
+                }
+            }
+        };
+    }
+
+    /**
+     * Appends a parameter.
+     *
+     * @param name
+     *            the name
+     * @param value
+     *            the value, or null for a parameter without value
+     */
+    public void add(String name, String value) {
+        insert(size, name, value);
+    }
+
+    /**
+     * Replaces all parameters of a name by a single parameter, appended last.
+     *
+     * @param name
+     *            the name
+     * @param value
+     *            the value, or null for a parameter without value
+     */
+    public void set(String name, String value) {
+        remove(name);
+        add(name, value);
+    }
+
+    /**
+     * Removes all parameters of a name.
+     *
+     * @param name
+     *            the name
+     * @return the number of parameters removed
+     */
+    public int remove(String name) {
+        if (slots != null && slots[slot(name)] == 0) {
+            return 0;
+        }
+        int j = 0;
+        for (int i = 0; i < size; i++) {
+            if (!equals(names[i], name)) {
+                names[j] = names[i];
+                values[j] = values[i];
+                if (entries != null) {
+                    entries[j] = entries[i];
+                    if (entries[j] != null) {
+                        entries[j].index = j;
+                    }
+                }
+                j++;
+            } else {
+                detach(i);
+            }
+        }
+        int removed = size - j;
+        if (0 < removed) {
+            Arrays.fill(names, j, size, null);
+            Arrays.fill(values, j, size, null);
+            if (entries != null) {
+                Arrays.fill(entries, j, size, null);
+            }
+            size = j;
+            reindex();
+        }
+        return removed;
+    }
+
+    /**
+     * Removes all parameters.
+     */
+    public void clear() {
+        for (int i = 0; i < size; i++) {
+            detach(i);
+        }
+        Arrays.fill(names, 0, size, null);
+        Arrays.fill(values, 0, size, null);
+        size = 0;
+        reindex();
+    }
+
+    /**
+     * Provides a view of the parameters as a list, which reads and writes
+     * through to this multimap. Setting the name or value of a parameter read
+     * from the list writes through to the multimap, until the parameter is
+     * removed or replaced.
+     *
+     * @return the list view
+     */
+    public List<Parameter> asList() {
+        return new AbstractList<Parameter>() {
+            @Override
+            public Parameter get(int index) {
+                check(index, size);
+                if (entries == null) {
+                    entries = new Entry[names.length];
+                }
+                Entry entry = entries[index];
+                if (entry == null) {
+                    entry = new Entry(index);
+                    entries[index] = entry;
+                }
+                return entry;
+            }
+
+            @Override
+            public Parameter set(int index, Parameter parameter) {
+                check(index, size);
+                Parameter previous = get(index);
+                detach(index);
+                names[index] = parameter.getName();
+                values[index] = parameter.getValue();
+                reindex();
+                return previous;
+            }
+
+            @Override
+            public void add(int index, Parameter parameter) {
+                check(index, size + 1);
+                insert(index, parameter.getName(), parameter.getValue());
+                modCount++;
+            }
+
+            @Override
+            public Parameter remove(int index) {
+                check(index, size);
+                Parameter previous = get(index);
+                detach(index);
+                System.arraycopy(names, index + 1, names, index, size - index - 1);
+                System.arraycopy(values, index + 1, values, index, size - index - 1);
+                System.arraycopy(entries, index + 1, entries, index, size - index - 1);
+                size--;
+                names[size] = null;
+                values[size] = null;
+                entries[size] = null;
+                renumber(index);
+                reindex();
+                modCount++;
+                return previous;
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+        };
+    }
+
+    @Override
+    public Iterator<Parameter> iterator() {
+        return asList().iterator();
+    }
+
+    private void insert(int index, String name, String value) {
+        if (size == names.length) {
+            names = Arrays.copyOf(names, size * 2);
+            values = Arrays.copyOf(values, size * 2);
+            if (next != null) {
+                next = Arrays.copyOf(next, size * 2);
+            }
+            if (entries != null) {
+                entries = Arrays.copyOf(entries, size * 2);
+            }
+        }
+        if (index < size) {
+            System.arraycopy(names, index, names, index + 1, size - index);
+            System.arraycopy(values, index, values, index + 1, size - index);
+            if (entries != null) {
+                System.arraycopy(entries, index, entries, index + 1, size - index);
+                entries[index] = null;
+                renumber(index + 1);
+            }
+        }
+        names[index] = name;
+        values[index] = value;
+        size++;
+        if (index < size - 1 || (slots == null && INDEX_THRESHOLD < size)) {
+            reindex();
+        } else {
+            modifications++;
+            if (slots != null) {
+                if (slots.length < 2 * size) {
+                    reindex();
+                } else {
+                    link(index);
+                }
+            }
+        }
+    }
+
+    private void reindex() {
+        modifications++;
+        if (size <= INDEX_THRESHOLD) {
+            slots = null;
+            tails = null;
+            next = null;
+            return;
+        }
+        int capacity = Integer.highestOneBit(size) * 4;
+        slots = new int[capacity];
+        tails = new int[capacity];
+        next = new int[names.length];
+        for (int i = 0; i < size; i++) {
+            link(i);
+        }
+    }
+
+    private void link(int index) {
+        int slot = slot(names[index]);
+        next[index] = -1;
+        if (slots[slot] == 0) {
+            slots[slot] = index + 1;
+        } else {
+            next[tails[slot]] = index;
+        }
+        tails[slot] = index;
+    }
+
+    /**
+     * Provides the slot of a name, either the slot holding the name or the
+     * empty slot where it would be held.
+     */
+    private int slot(String name) {
+        int mask = slots.length - 1;
+        int hash = name == null ? 0 : name.hashCode();
+        int slot = (hash ^ (hash >>> 16)) & mask;
+        while (slots[slot] != 0 && !equals(names[slots[slot] - 1], name)) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private int[] positions(String name) {
+        int count = 0;
+        int[] positions = new int[4];
+        if (slots != null) {
+            for (int i = slots[slot(name)] - 1; -1 < i; i = next[i]) {
+                if (count == positions.length) {
+                    positions = Arrays.copyOf(positions, count * 2);
+                }
+                positions[count++] = i;
+            }
+        } else {
+            for (int i = 0; i < size; i++) {
+                if (equals(names[i], name)) {
+                    if (count == positions.length) {
+                        positions = Arrays.copyOf(positions, count * 2);
+                    }
+                    positions[count++] = i;
+                }
+            }
+        }
+        return Arrays.copyOf(positions, count);
+    }
+
+    /**
+     * Stops a parameter read from the list view from writing through.
+     */
+    private void detach(int index) {
+        if (entries != null && entries[index] != null) {
+            entries[index].index = -1;
+            entries[index] = null;
+        }
+    }
+
+    private void renumber(int from) {
+        for (int i = from; i < size; i++) {
+            if (entries[i] != null) {
+                entries[i].index = i;
+            }
+        }
+    }
+
+    private static boolean equals(String a, String b) {
+        return a == null ? b == null : a.equals(b);
+    }
+
+    private static void check(int index, int size) {
+        if (index < 0 || size <= index) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+    }
+
+    /**
+     * A parameter read from the list view, writing through to its position.
+     */
+    private final class Entry extends Parameter {
+
+        private int index;
+
+        private Entry(int index) {
+            super(names[index], values[index]);
+            this.index = index;
+        }
+
+        @Override
+        public void setName(String name) {
+            super.setName(name);
+            if (0 <= index) {
+                names[index] = name;
+                reindex();
+            }
+        }
+
+        @Override
+        public void setValue(String value) {
+            super.setValue(value);
+            if (0 <= index) {
+                values[index] = value;
+                modifications++;
+            }
+        }
+
+    }
+
+}
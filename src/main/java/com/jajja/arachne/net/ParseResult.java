@@ -0,0 +1,103 @@
+/*
+ * Copyright (C) 2013 Jajja Communications AB
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.jajja.arachne.net;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+import com.jajja.arachne.exceptions.Reason;
+
+/**
+ * The outcome of parsing without exceptions, holding either the parsed value
+ * or the reason the input is malformed. Failures are shared instances, one
+ * per reason, so that rejecting malformed input does not allocate.
+ *
+ * <pre>
+ * ParseResult&lt;Url&gt; result = Url.tryParse(string);
+ * if (result.isValid()) {
+ *     Url url = result.get();
+ * } else {
+ *     Reason reason = result.getReason();
+ * }
+ * </pre>
+ *
+ * @author Martin Korinth <martin.korinth@jajja.com>
+ */
+public final class ParseResult<T> {
+
+    private static final Map<Reason, ParseResult<?>> failures = new EnumMap<Reason, ParseResult<?>>(Reason.class);
+    static {
+        for (Reason reason : Reason.values()) {
+            failures.put(reason, new ParseResult<Object>(null, reason));
+        }
+    }
+
+    private final T value;
+    private final Reason reason;
+
+    private ParseResult(T value, Reason reason) {
+        this.value = value;
+        this.reason = reason;
+    }
+
+    static <T> ParseResult<T> valid(T value) {
+        return new ParseResult<T>(value, null);
+    }
+
+    @SuppressWarnings("unchecked")
+    static <T> ParseResult<T> invalid(Reason reason) {
+        return (ParseResult<T>) failures.get(reason);
+    }
+
+    /**
+     * Tells whether the input was parsed or not.
+     *
+     * @return true if the input was parsed, false if it is malformed
+     */
+    public boolean isValid() {
+        return reason == null;
+    }
+
+    /**
+     * Provides the parsed value.
+     *
+     * @return the value, or null if the input is malformed
+     */
+    public T get() {
+        return value;
+    }
+
+    /**
+     * Provides the reason the input is malformed.
+     *
+     * @return the reason, or null if the input was parsed
+     */
+    public Reason getReason() {
+        return reason;
+    }
+
+    @Override
+    public String toString() {
+        return reason == null ? String.valueOf(value) : reason.name();
+    }
+
+}
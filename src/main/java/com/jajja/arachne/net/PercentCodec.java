@@ -0,0 +1,380 @@
+/*
+ * Copyright (C) 2013 Jajja Communications AB
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.jajja.arachne.net;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * A percent encoder of URL components, with a table of the characters that
+ * may appear unescaped in each component, as specified in RFC 3986, and in
+ * form encoded values. Other characters are escaped as UTF-8. Text without
+ * characters to escape is passed on whole, or returned as is.
+ *
+ * @author Martin Korinth <martin.korinth@jajja.com>
+ */
+public final class PercentCodec {
+
+    /**
+     * The components of URLs, and form encoded values.
+     */
+    public enum Component {
+        /** Paths, with segments separated by "/". */
+        PATH(1),
+        /** Queries. */
+        QUERY(2),
+        /** Fragments. */
+        FRAGMENT(4),
+        /** User information, with user and password separated by ":". */
+        USER_INFO(8),
+        /**
+         * Form encoded names and values, as by
+         * {@link java.net.URLEncoder#encode(String, String)} with UTF-8, which
+         * encodes space as "+".
+         */
+        FORM(16);
+
+        private final int mask;
+
+        private Component(int mask) {
+            this.mask = mask;
+        }
+    }
+
+    private static final char[] HEX = "0123456789ABCDEF".toCharArray();
+    private static final int UNRESERVED = 32;
+    private static final byte[] TABLE = new byte[128];
+    static {
+        String alphanumeric = "abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ0123456789";
+        String pchar = alphanumeric + "-._~" + "!$&'()*+,;=" + ":@";
+        mark(pchar + "/", Component.PATH.mask);
+        mark(pchar + "/?", Component.QUERY.mask | Component.FRAGMENT.mask);
+        mark(alphanumeric + "-._~" + "!$&'()*+,;=" + ":", Component.USER_INFO.mask);
+        mark(alphanumeric + ".-*_", Component.FORM.mask);
+        mark(alphanumeric + "-._~", UNRESERVED);
+    }
+
+    private static void mark(String characters, int mask) {
+        for (int i = 0; i < characters.length(); i++) {
+            TABLE[characters.charAt(i)] |= mask;
+        }
+    }
+
+    private PercentCodec() {
+    }
+
+    /**
+     * Tells whether a character may appear unescaped in a component.
+     *
+     * @param c
+     *            the character
+     * @param component
+     *            the component
+     * @return true if the character may appear unescaped, false otherwise
+     */
+    public static boolean isSafe(char c, Component component) {
+        return c < 0x80 && (TABLE[c] & component.mask) != 0;
+    }
+
+    /**
+     * Provides the index of the first character to escape in a component.
+     *
+     * @param cs
+     *            the text of the component
+     * @param start
+     *            the start index, inclusive
+     * @param end
+     *            the end index, exclusive
+     * @param component
+     *            the component
+     * @return the index of the first character to escape, or -1 if there is
+     *         none
+     */
+    public static int indexOfUnsafe(CharSequence cs, int start, int end, Component component) {
+        int mask = component.mask;
+        for (int i = start; i < end; i++) {
+            char c = cs.charAt(i);
+            if (0x80 <= c || (TABLE[c] & mask) == 0) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Percent encodes a component.
+     *
+     * @param string
+     *            the text of the component
+     * @param component
+     *            the component
+     * @return the encoded text, which is the same string if there is nothing
+     *         to escape
+     */
+    public static String encode(String string, Component component) {
+        int unsafe = indexOfUnsafe(string, 0, string.length(), component);
+        if (unsafe < 0) {
+            return string;
+        }
+        StringBuilder builder = new StringBuilder(string.length() + 16);
+        builder.append(string, 0, unsafe);
+        return encode(string, unsafe, string.length(), component, builder).toString();
+    }
+
+    /**
+     * Appends a percent encoded component to a builder.
+     *
+     * @param cs
+     *            the text of the component
+     * @param start
+     *            the start index, inclusive
+     * @param end
+     *            the end index, exclusive
+     * @param component
+     *            the component
+     * @param builder
+     *            the builder
+     * @return the builder
+     */
+    public static StringBuilder encode(CharSequence cs, int start, int end, Component component, StringBuilder builder) {
+        try {
+            encode(cs, start, end, component, (Appendable) builder);
+        } catch (IOException e) {
+            // Not thrown by string builders
+            throw new RuntimeException(e);
+        }
+        return builder;
+    }
+
+    /**
+     * Appends a percent encoded component to an appendable.
+     *
+     * @param cs
+     *            the text of the component
+     * @param start
+     *            the start index, inclusive
+     * @param end
+     *            the end index, exclusive
+     * @param component
+     *            the component
+     * @param out
+     *            the appendable
+     * @throws IOException
+     *             when thrown by the appendable
+     */
+    public static void encode(CharSequence cs, int start, int end, Component component, Appendable out) throws IOException {
+        int mask = component.mask;
+        int run = start;
+        for (int i = start; i < end; i++) {
+            char c = cs.charAt(i);
+            if (c < 0x80 && (TABLE[c] & mask) != 0) {
+                continue;
+            }
+            if (run < i) {
+                out.append(cs, run, i);
+            }
+            if (c == ' ' && component == Component.FORM) {
+                out.append('+');
+            } else {
+                i = escape(cs, i, end, out);
+            }
+            run = i + 1;
+        }
+        if (run < end) {
+            out.append(cs, run, end);
+        }
+    }
+
+    /**
+     * Puts a percent encoded component into a byte buffer, as US-ASCII.
+     *
+     * @param cs
+     *            the text of the component
+     * @param start
+     *            the start index, inclusive
+     * @param end
+     *            the end index, exclusive
+     * @param component
+     *            the component
+     * @param buffer
+     *            the byte buffer
+     * @return the byte buffer
+     * @throws java.nio.BufferOverflowException
+     *             when the buffer is full
+     */
+    public static ByteBuffer encode(CharSequence cs, int start, int end, Component component, ByteBuffer buffer) {
+        int mask = component.mask;
+        for (int i = start; i < end; i++) {
+            char c = cs.charAt(i);
+            if (c < 0x80 && (TABLE[c] & mask) != 0) {
+                buffer.put((byte) c);
+            } else if (c == ' ' && component == Component.FORM) {
+                buffer.put((byte) '+');
+            } else {
+                int cp = codePoint(cs, i, end);
+                if (0xffff < cp) {
+                    i++;
+                }
+                if (cp < 0x80) {
+                    put(cp, buffer);
+                } else if (cp < 0x800) {
+                    put(0xc0 | cp >> 6, buffer);
+                    put(0x80 | cp & 0x3f, buffer);
+                } else if (cp < 0x10000) {
+                    put(0xe0 | cp >> 12, buffer);
+                    put(0x80 | cp >> 6 & 0x3f, buffer);
+                    put(0x80 | cp & 0x3f, buffer);
+                } else {
+                    put(0xf0 | cp >> 18, buffer);
+                    put(0x80 | cp >> 12 & 0x3f, buffer);
+                    put(0x80 | cp >> 6 & 0x3f, buffer);
+                    put(0x80 | cp & 0x3f, buffer);
+                }
+            }
+        }
+        return buffer;
+    }
+
+    /**
+     * Appends a component that may already be percent encoded, with percent
+     * escapes in uppercase, escapes of unreserved characters decoded, and
+     * characters that may not appear in the component escaped, including "%"
+     * that does not start an escape.
+     *
+     * @param cs
+     *            the text of the component
+     * @param start
+     *            the start index, inclusive
+     * @param end
+     *            the end index, exclusive
+     * @param component
+     *            the component
+     * @param out
+     *            the appendable
+     * @throws IOException
+     *             when thrown by the appendable
+     */
+    public static void normalize(CharSequence cs, int start, int end, Component component, Appendable out) throws IOException {
+        int mask = component.mask;
+        int run = start;
+        for (int i = start; i < end; i++) {
+            char c = cs.charAt(i);
+            if (c < 0x80 && (TABLE[c] & mask) != 0) {
+                continue;
+            }
+            int high = 0;
+            int low = 0;
+            if (c == '%' && i + 2 < end && (high = hex(cs.charAt(i + 1))) >= 0 && (low = hex(cs.charAt(i + 2))) >= 0) {
+                int decoded = high << 4 | low;
+                boolean isUnreserved = decoded < 0x80 && (TABLE[decoded] & UNRESERVED) != 0;
+                if (!isUnreserved && cs.charAt(i + 1) == HEX[high] && cs.charAt(i + 2) == HEX[low]) {
+                    i += 2;
+                    continue;
+                }
+                if (run < i) {
+                    out.append(cs, run, i);
+                }
+                if (isUnreserved) {
+                    out.append((char) decoded);
+                } else {
+                    out.append('%').append(HEX[high]).append(HEX[low]);
+                }
+                i += 2;
+            } else {
+                if (run < i) {
+                    out.append(cs, run, i);
+                }
+                i = escape(cs, i, end, out);
+            }
+            run = i + 1;
+        }
+        if (run < end) {
+            out.append(cs, run, end);
+        }
+    }
+
+    /**
+     * Provides the value of a hexadecimal digit.
+     *
+     * @param c
+     *            the digit
+     * @return the value, or -1 if the character is not a hexadecimal digit
+     */
+    static int hex(char c) {
+        if (c >= '0' && c <= '9') {
+            return c - '0';
+        }
+        if (c >= 'A' && c <= 'F') {
+            return c - 'A' + 10;
+        }
+        if (c >= 'a' && c <= 'f') {
+            return c - 'a' + 10;
+        }
+        return -1;
+    }
+
+    /**
+     * Escapes the character at an index as UTF-8, and provides the index of
+     * its last char, the low surrogate of supplementary characters.
+     */
+    private static int escape(CharSequence cs, int i, int end, Appendable out) throws IOException {
+        int cp = codePoint(cs, i, end);
+        if (cp < 0x80) {
+            append(cp, out);
+        } else if (cp < 0x800) {
+            append(0xc0 | cp >> 6, out);
+            append(0x80 | cp & 0x3f, out);
+        } else if (cp < 0x10000) {
+            append(0xe0 | cp >> 12, out);
+            append(0x80 | cp >> 6 & 0x3f, out);
+            append(0x80 | cp & 0x3f, out);
+        } else {
+            append(0xf0 | cp >> 18, out);
+            append(0x80 | cp >> 12 & 0x3f, out);
+            append(0x80 | cp >> 6 & 0x3f, out);
+            append(0x80 | cp & 0x3f, out);
+            return i + 1;
+        }
+        return i;
+    }
+
+    /**
+     * Provides the code point at an index, or '?' for unpaired surrogates, as
+     * encoded by {@link String#getBytes(String)}.
+     */
+    private static int codePoint(CharSequence cs, int i, int end) {
+        char c = cs.charAt(i);
+        if (Character.isHighSurrogate(c) && i + 1 < end && Character.isLowSurrogate(cs.charAt(i + 1))) {
+            return Character.toCodePoint(c, cs.charAt(i + 1));
+        }
+        return c >= Character.MIN_SURROGATE && c <= Character.MAX_SURROGATE ? '?' : c;
+    }
+
+    private static void append(int b, Appendable out) throws IOException {
+        out.append('%').append(HEX[b >> 4]).append(HEX[b & 0xf]);
+    }
+
+    private static void put(int b, ByteBuffer buffer) {
+        buffer.put((byte) '%').put((byte) HEX[b >> 4]).put((byte) HEX[b & 0xf]);
+    }
+
+}
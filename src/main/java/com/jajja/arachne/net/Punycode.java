@@ -0,0 +1,215 @@
+/*
+ * Copyright (C) 2013 Jajja Communications AB
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.jajja.arachne.net;
+
+/**
+ * An implementation of Punycode (RFC 3492), the encoding of Unicode labels of
+ * international domain names into ASCII, working on arrays of characters.
+ *
+ * @author Martin Korinth <martin.korinth@jajja.com>
+ */
+final class Punycode {
+
+    private static final int BASE = 36;
+    private static final int TMIN = 1;
+    private static final int TMAX = 26;
+    private static final int SKEW = 38;
+    private static final int DAMP = 700;
+    private static final int INITIAL_BIAS = 72;
+    private static final int INITIAL_N = 0x80;
+
+    private Punycode() {
+    }
+
+    /**
+     * Encodes a label, appending the encoded label, without any ACE prefix, to
+     * the builder.
+     *
+     * @param input
+     *            the characters of the label
+     * @param start
+     *            the start of the label
+     * @param end
+     *            the end of the label, exclusive
+     * @param output
+     *            the builder to append to
+     * @return true if the label was encoded, false on overflow or malformed
+     *         surrogates
+     */
+    static boolean encode(char[] input, int start, int end, StringBuilder output) {
+        int[] codePoints = new int[end - start];
+        int length = 0;
+        int basic = 0;
+        for (int i = start; i < end; i++) {
+            int c = input[i];
+            if (Character.isHighSurrogate(input[i])) {
+                if (i + 1 == end || !Character.isLowSurrogate(input[i + 1]))
+                    return false;
+                c = Character.toCodePoint(input[i], input[++i]);
+            } else if (Character.isLowSurrogate(input[i])) {
+                return false;
+            }
+            if (c < INITIAL_N) {
+                output.append((char) c);
+                basic++;
+            }
+            codePoints[length++] = c;
+        }
+        if (0 < basic) {
+            output.append('-');
+        }
+        int n = INITIAL_N;
+        int delta = 0;
+        int bias = INITIAL_BIAS;
+        int handled = basic;
+        while (handled < length) {
+            int m = Integer.MAX_VALUE;
+            for (int i = 0; i < length; i++) {
+                if (n <= codePoints[i] && codePoints[i] < m) {
+                    m = codePoints[i];
+                }
+            }
+            if ((m - n) > (Integer.MAX_VALUE - delta) / (handled + 1))
+                return false;
+            delta += (m - n) * (handled + 1);
+            n = m;
+            for (int i = 0; i < length; i++) {
+                int c = codePoints[i];
+                if (c < n) {
+                    if (delta == Integer.MAX_VALUE)
+                        return false;
+                    delta++;
+                }
+                if (c == n) {
+                    int q = delta;
+                    for (int k = BASE;; k += BASE) {
+                        int t = k <= bias ? TMIN : bias + TMAX <= k ? TMAX : k - bias;
+                        if (q < t) {
+                            break;
+                        }
+                        output.append(digit(t + (q - t) % (BASE - t)));
+                        q = (q - t) / (BASE - t);
+                    }
+                    output.append(digit(q));
+                    bias = adapt(delta, handled + 1, handled == basic);
+                    delta = 0;
+                    handled++;
+                }
+            }
+            delta++;
+            n++;
+        }
+        return true;
+    }
+
+    /**
+     * Decodes a label, appending the decoded label to the builder.
+     *
+     * @param input
+     *            the characters of the label, without any ACE prefix
+     * @param start
+     *            the start of the label
+     * @param end
+     *            the end of the label, exclusive
+     * @param output
+     *            the builder to append to
+     * @return true if the label was decoded, false if malformed
+     */
+    static boolean decode(char[] input, int start, int end, StringBuilder output) {
+        int[] codePoints = new int[end - start];
+        int length = 0;
+        int delimiter = start - 1;
+        for (int i = end - 1; start <= i; i--) {
+            if (input[i] == '-') {
+                delimiter = i;
+                break;
+            }
+        }
+        for (int i = start; i < delimiter; i++) {
+            if (INITIAL_N <= input[i])
+                return false;
+            codePoints[length++] = input[i];
+        }
+        int n = INITIAL_N;
+        int bias = INITIAL_BIAS;
+        int i = 0;
+        for (int in = delimiter < start ? start : delimiter + 1; in < end;) {
+            int previous = i;
+            int w = 1;
+            for (int k = BASE;; k += BASE) {
+                if (end <= in)
+                    return false;
+                int digit = digit(input[in++]);
+                if (BASE <= digit || (Integer.MAX_VALUE - i) / w < digit)
+                    return false;
+                i += digit * w;
+                int t = k <= bias ? TMIN : bias + TMAX <= k ? TMAX : k - bias;
+                if (digit < t) {
+                    break;
+                }
+                if (Integer.MAX_VALUE / (BASE - t) < w)
+                    return false;
+                w *= BASE - t;
+            }
+            bias = adapt(i - previous, length + 1, previous == 0);
+            if ((Integer.MAX_VALUE - n) < i / (length + 1))
+                return false;
+            n += i / (length + 1);
+            i %= length + 1;
+            if (Character.MAX_CODE_POINT < n || (Character.MIN_SURROGATE <= n && n <= Character.MAX_SURROGATE))
+                return false;
+            System.arraycopy(codePoints, i, codePoints, i + 1, length - i);
+            codePoints[i++] = n;
+            length++;
+        }
+        for (int j = 0; j < length; j++) {
+            output.appendCodePoint(codePoints[j]);
+        }
+        return true;
+    }
+
+    private static int adapt(int delta, int points, boolean isFirst) {
+        delta = isFirst ? delta / DAMP : delta / 2;
+        delta += delta / points;
+        int k = 0;
+        while (((BASE - TMIN) * TMAX) / 2 < delta) {
+            delta /= BASE - TMIN;
+            k += BASE;
+        }
+        return k + (BASE - TMIN + 1) * delta / (delta + SKEW);
+    }
+
+    private static char digit(int d) {
+        return (char) (d < 26 ? d + 'a' : d - 26 + '0');
+    }
+
+    private static int digit(char c) {
+        if (c >= 'a' && c <= 'z')
+            return c - 'a';
+        if (c >= 'A' && c <= 'Z')
+            return c - 'A';
+        if (c >= '0' && c <= '9')
+            return c - '0' + 26;
+        return BASE;
+    }
+
+}
@@ -0,0 +1,282 @@
+/*
+ * Copyright (C) 2013 Jajja Communications AB
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.jajja.arachne.net;
+
+import java.nio.charset.Charset;
+
+/**
+ * A decoder of percent encoded query values, which decodes each run of
+ * percent escapes into a reusable byte buffer and from there into characters,
+ * with "+" decoded as space. Malformed escapes are kept as they are.
+ *
+ * A decoder either decodes a given charset or detects the charset: escaped
+ * bytes are validated as UTF-8 while decoded, and the first run of bytes that
+ * is not UTF-8 switches the decoder to a fallback charset, for that value and
+ * the values decoded after it. The fallback charset defaults to ISO-8859-1, or
+ * the charset named by the system property <tt>arachne.query.fallback</tt>.
+ * The detected charset is reported by {@link #getCharset()}, and may be given
+ * to decoders for other queries from the same host.
+ *
+ * Decoders are not safe for use by multiple threads.
+ *
+ * @author Martin Korinth <martin.korinth@jajja.com>
+ */
+public final class QueryDecoder {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final Charset ISO_8859_1 = Charset.forName("ISO-8859-1");
+    private static volatile Charset defaultFallback = Charset.forName(System.getProperty("arachne.query.fallback", "ISO-8859-1"));
+
+    private final Charset charset;
+    private final Charset fallback;
+    private Charset detected;
+    private byte[] bytes = new byte[64];
+    private final StringBuilder builder = new StringBuilder(64);
+
+    /**
+     * Creates a decoder detecting the charset, with the default fallback
+     * charset.
+     */
+    public QueryDecoder() {
+        this(null, defaultFallback);
+    }
+
+    /**
+     * Creates a decoder.
+     *
+     * @param charset
+     *            the charset, or null to detect the charset
+     * @param fallback
+     *            the fallback charset when detecting the charset
+     */
+    public QueryDecoder(Charset charset, Charset fallback) {
+        if (fallback == null)
+            throw new IllegalArgumentException("Fallback charset must not be null!");
+        this.charset = charset;
+        this.fallback = fallback;
+    }
+
+    /**
+     * Creates a decoder for the encoding of a URL.
+     *
+     * @param encoding
+     *            the name of a charset, or "detect" to detect the charset
+     * @return the decoder
+     * @throws java.nio.charset.UnsupportedCharsetException
+     *             when the charset is not supported
+     */
+    public static QueryDecoder forEncoding(String encoding) {
+        return new QueryDecoder("detect".equals(encoding) ? null : Charset.forName(encoding), defaultFallback);
+    }
+
+    /**
+     * Provides the default fallback charset.
+     *
+     * @return the default fallback charset
+     */
+    public static Charset getDefaultFallback() {
+        return defaultFallback;
+    }
+
+    /**
+     * Sets the default fallback charset, overriding the system property
+     * <tt>arachne.query.fallback</tt>.
+     *
+     * @param fallback
+     *            the default fallback charset
+     */
+    public static void setDefaultFallback(Charset fallback) {
+        if (fallback == null)
+            throw new IllegalArgumentException("Fallback charset must not be null!");
+        QueryDecoder.defaultFallback = fallback;
+    }
+
+    /**
+     * Tells whether the decoder detects the charset.
+     *
+     * @return true if the decoder detects the charset, false otherwise
+     */
+    public boolean isDetecting() {
+        return charset == null;
+    }
+
+    /**
+     * Provides the charset of the decoder, or the charset detected so far when
+     * detecting: UTF-8 once UTF-8 has been decoded, or the fallback charset
+     * once bytes that are not UTF-8 have been decoded.
+     *
+     * @return the charset, or null if no bytes outside US-ASCII have been
+     *         decoded when detecting
+     */
+    public Charset getCharset() {
+        return charset != null ? charset : detected;
+    }
+
+    /**
+     * Provides the fallback charset.
+     *
+     * @return the fallback charset
+     */
+    public Charset getFallback() {
+        return fallback;
+    }
+
+    /**
+     * Forgets the detected charset.
+     */
+    public void reset() {
+        detected = null;
+    }
+
+    /**
+     * Decodes a value.
+     *
+     * @param cs
+     *            the encoded value
+     * @param start
+     *            the start index, inclusive
+     * @param end
+     *            the end index, exclusive
+     * @return the decoded value
+     */
+    public String decode(CharSequence cs, int start, int end) {
+        int i = start;
+        while (i < end && cs.charAt(i) != '%' && cs.charAt(i) != '+') {
+            i++;
+        }
+        if (i == end) {
+            return cs.subSequence(start, end).toString();
+        }
+        builder.setLength(0);
+        builder.append(cs, start, i);
+        while (i < end) {
+            char c = cs.charAt(i);
+            if (c == '+') {
+                builder.append(' ');
+                i++;
+            } else if (c == '%' && isEscape(cs, i, end)) {
+                int count = 0;
+                do {
+                    if (count == bytes.length) {
+                        byte[] grown = new byte[count * 2];
+                        System.arraycopy(bytes, 0, grown, 0, count);
+                        bytes = grown;
+                    }
+                    bytes[count++] = (byte) (PercentCodec.hex(cs.charAt(i + 1)) << 4 | PercentCodec.hex(cs.charAt(i + 2)));
+                    i += 3;
+                } while (i < end && cs.charAt(i) == '%' && isEscape(cs, i, end));
+                append(count);
+            } else {
+                builder.append(c);
+                i++;
+            }
+        }
+        return builder.toString();
+    }
+
+    private static boolean isEscape(CharSequence cs, int i, int end) {
+        return i + 2 < end && 0 <= PercentCodec.hex(cs.charAt(i + 1)) && 0 <= PercentCodec.hex(cs.charAt(i + 2));
+    }
+
+    /**
+     * Appends a run of decoded bytes as characters.
+     */
+    private void append(int count) {
+        int i = 0;
+        while (i < count && 0 <= bytes[i]) {
+            builder.append((char) bytes[i++]);
+        }
+        if (i == count) {
+            return;
+        }
+        Charset charset = this.charset;
+        if (charset == null) {
+            if (detected != fallback) {
+                if (appendUtf8(i, count)) {
+                    detected = UTF_8;
+                    return;
+                }
+                detected = fallback;
+            }
+            charset = fallback;
+        } else if (charset.equals(UTF_8) && appendUtf8(i, count)) {
+            return;
+        }
+        if (charset.equals(ISO_8859_1)) {
+            for (; i < count; i++) {
+                builder.append((char) (bytes[i] & 0xff));
+            }
+        } else {
+            builder.append(new String(bytes, i, count - i, charset));
+        }
+    }
+
+    /**
+     * Appends a run of bytes validated as UTF-8, or nothing if the bytes are
+     * not UTF-8.
+     *
+     * @return true if the bytes are UTF-8, false otherwise
+     */
+    private boolean appendUtf8(int i, int count) {
+        int mark = builder.length();
+        while (i < count) {
+            int b = bytes[i++] & 0xff;
+            int cp;
+            int continuations;
+            int min;
+            if (b < 0x80) {
+                builder.append((char) b);
+                continue;
+            } else if (b < 0xc2) {
+                cp = -1;
+                continuations = 0;
+                min = 0;
+            } else if (b < 0xe0) {
+                cp = b & 0x1f;
+                continuations = 1;
+                min = 0x80;
+            } else if (b < 0xf0) {
+                cp = b & 0x0f;
+                continuations = 2;
+                min = 0x800;
+            } else if (b < 0xf5) {
+                cp = b & 0x07;
+                continuations = 3;
+                min = 0x10000;
+            } else {
+                cp = -1;
+                continuations = 0;
+                min = 0;
+            }
+            for (; 0 < continuations && i < count && (bytes[i] & 0xc0) == 0x80; continuations--) {
+                cp = cp << 6 | bytes[i++] & 0x3f;
+            }
+            if (continuations != 0 || cp < min || 0x10ffff < cp || (0xd800 <= cp && cp <= 0xdfff)) {
+                builder.setLength(mark);
+                return false;
+            }
+            builder.appendCodePoint(cp);
+        }
+        return true;
+    }
+
+}
@@ -21,39 +21,118 @@
  */
 package com.jajja.arachne.net;
 
-public class Record {
+/**
+ * An immutable record of a domain matched against the public suffix list.
+ *
+ * The entry and suffix of a record are views into the fully qualified domain
+ * name it was matched from, and are only built as strings when asked for.
+ * Records can be compared and hashed without building any strings.
+ *
+ * @author Martin Korinth <martin.korinth@jajja.com>
+ */
+public final class Record {
 
+    private final String fqdn;
+    private final int entryStart;
+    private final int suffixStart;
+    private final int end;
+    private final String rule;
     private String entry;
     private String suffix;
-    private String rule;
 
-    public String getEntry() {
-        return entry;
+    Record(String fqdn, int entryStart, int suffixStart, int end, String rule) {
+        this.fqdn = fqdn;
+        this.entryStart = entryStart;
+        this.suffixStart = suffixStart;
+        this.end = end;
+        this.rule = rule;
     }
 
-    public void setEntry(String entry) {
-        this.entry = entry;
+    public String getEntry() {
+        // racy single-check, strings are immutable and safely published
+        String entry = this.entry;
+        if (entry == null) {
+            entry = fqdn.substring(entryStart, end);
+            this.entry = entry;
+        }
+        return entry;
     }
 
     public String getSuffix() {
+        String suffix = this.suffix;
+        if (suffix == null) {
+            suffix = fqdn.substring(suffixStart, end);
+            this.suffix = suffix;
+        }
         return suffix;
     }
 
-    public void setSuffix(String suffix) {
-        this.suffix = suffix;
-    }
-
     public String getRule() {
         return rule;
     }
 
-    public void setRule(String rule) {
-        this.rule = rule;
+    /**
+     * Provides the length of the entry, without building it.
+     *
+     * @return the length of the entry
+     */
+    public int getEntryLength() {
+        return end - entryStart;
+    }
+
+    /**
+     * Tells whether the entry equals a sequence of characters, without
+     * building it.
+     *
+     * @param entry
+     *            the characters to compare with
+     * @return true if the entry equals the characters, false otherwise
+     */
+    public boolean isEntry(CharSequence entry) {
+        if (entry.length() != end - entryStart) {
+            return false;
+        }
+        for (int i = 0; i < entry.length(); i++) {
+            if (fqdn.charAt(entryStart + i) != entry.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Tells whether another record has the same entry, suffix and rule.
+     */
+    @Override
+    public boolean equals(Object object) {
+        if (this == object) {
+            return true;
+        }
+        if (!(object instanceof Record)) {
+            return false;
+        }
+        Record record = (Record) object;
+        return end - entryStart == record.end - record.entryStart
+                && end - suffixStart == record.end - record.suffixStart
+                && fqdn.regionMatches(entryStart, record.fqdn, record.entryStart, end - entryStart)
+                && rule.equals(record.rule);
+    }
+
+    /**
+     * Provides a hash code equal to that of the entry.
+     */
+    @Override
+    public int hashCode() {
+        int hash = 0;
+        for (int i = entryStart; i < end; i++) {
+            hash = 31 * hash + fqdn.charAt(i);
+        }
+        return hash;
     }
 
     @Override
     public String toString() {
-        return "{ entry => " + entry + ", suffix => " + suffix
+        return "{ entry => " + getEntry() + ", suffix => " + getSuffix()
                 + ", rule => " + rule + " }";
     }
 
@@ -0,0 +1,359 @@
+/*
+ * Copyright (C) 2013 Jajja Communications AB
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.jajja.arachne.net;
+
+import java.io.IOException;
+
+import com.jajja.arachne.exceptions.MalformedUriException;
+
+/**
+ * A resolver of references relative to a base URL, as specified in RFC 3986
+ * section 5.2, for resolving the links of a page. The base URL is prepared
+ * once: its scheme and authority are kept as a prefix, both as is and in
+ * canonical form, and the directory of its path is split into segments with
+ * dot segments removed, so that leading "./" and "../" of references step
+ * through the segments instead of being removed from the merged path.
+ *
+ * References resolve to strings, as recomposed by section 5.3, or to the
+ * canonical form and fingerprint of a {@link Canonicalizer}. References with
+ * a scheme or an authority of their own are parsed as URLs for canonical
+ * forms; other references are written after the canonical prefix of the base
+ * URL without parsing.
+ *
+ * Unlike {@link Url#resolve(String)}, which mimics web browsers, the resolver
+ * follows RFC 3986 to the letter: "../" above the root is dropped, and a
+ * reference with a scheme is absolute even when the scheme is that of the base
+ * URL.
+ *
+ * Resolvers keep buffers for reuse between references, and are not safe for
+ * use by multiple threads.
+ *
+ * @author Martin Korinth <martin.korinth@jajja.com>
+ */
+public final class Resolver {
+
+    private final Url base;
+    private final Canonicalizer canonicalizer;
+    private final String scheme;
+    private final String prefix;
+    private final String canonicalPrefix;
+    private final boolean hasHost;
+    private final String path;
+    private final String query;
+    private final String directory;
+    private final int[] segments; // ends of the directory after each slash
+    private final StringBuilder builder = new StringBuilder(256);
+    private final StringBuilder target = new StringBuilder(256);
+    private String targetQuery;
+    private String targetFragment;
+
+    /**
+     * Creates a resolver, with a canonicalizer with the default flags.
+     *
+     * @param base
+     *            the base URL
+     */
+    public Resolver(Url base) {
+        this(base, new Canonicalizer());
+    }
+
+    /**
+     * Creates a resolver.
+     *
+     * @param base
+     *            the base URL
+     * @param canonicalizer
+     *            the canonicalizer of canonical forms and fingerprints
+     */
+    public Resolver(Url base, Canonicalizer canonicalizer) {
+        this.base = base;
+        this.canonicalizer = canonicalizer;
+        scheme = base.getScheme();
+        Host host = base.getHost();
+        hasHost = host != null;
+        builder.append(scheme).append("://");
+        if (hasHost) {
+            String userInfo = base.getUserInfo();
+            if (userInfo != null) {
+                builder.append(userInfo).append('@');
+            }
+            String name = host.toString();
+            if (name.indexOf(':') < 0) {
+                builder.append(name);
+            } else {
+                builder.append('[').append(name).append(']');
+            }
+            Integer port = base.getPort();
+            if (port != null) {
+                builder.append(':').append(port.intValue());
+            }
+        }
+        prefix = builder.toString();
+        builder.setLength(0);
+        try {
+            canonicalizer.writePrefix(base, builder);
+        } catch (IOException e) {
+            // Not thrown by string builders
+            throw new RuntimeException(e);
+        }
+        canonicalPrefix = builder.toString();
+        path = base.getPath() != null ? base.getPath() : "";
+        query = base.getQuery();
+        builder.setLength(0);
+        if (hasHost && path.length() == 0) {
+            builder.append('/');
+        } else {
+            builder.append(path, 0, path.lastIndexOf('/') + 1);
+            Canonicalizer.removeDotSegments(builder);
+        }
+        directory = builder.toString();
+        int count = 0;
+        for (int i = 0; i < directory.length(); i++) {
+            if (directory.charAt(i) == '/') {
+                count++;
+            }
+        }
+        segments = new int[count];
+        for (int i = 0, j = 0; i < directory.length(); i++) {
+            if (directory.charAt(i) == '/') {
+                segments[j++] = i + 1;
+            }
+        }
+    }
+
+    /**
+     * Provides the base URL.
+     *
+     * @return the base URL
+     */
+    public Url getBase() {
+        return base;
+    }
+
+    /**
+     * Resolves a reference.
+     *
+     * @param reference
+     *            the reference
+     * @return the target URL
+     */
+    public String resolve(String reference) {
+        builder.setLength(0);
+        return resolve(reference, builder).toString();
+    }
+
+    /**
+     * Resolves a reference, appending the target URL to a builder.
+     *
+     * @param reference
+     *            the reference
+     * @param out
+     *            the builder
+     * @return the builder
+     */
+    public StringBuilder resolve(String reference, StringBuilder out) {
+        int colon = UrlLexer.scheme(reference, 0, reference.length());
+        if (colon < 0 && !reference.startsWith("//")) {
+            resolveRelative(reference);
+            out.append(prefix).append(target);
+            if (targetQuery != null) {
+                out.append('?').append(targetQuery);
+            }
+            if (targetFragment != null) {
+                out.append('#').append(targetFragment);
+            }
+            return out;
+        }
+        if (colon < 0) {
+            out.append(scheme).append(':');
+        }
+        return appendAbsolute(reference, colon + 1, out);
+    }
+
+    /**
+     * Resolves a reference to the canonical form of the target URL.
+     *
+     * @param reference
+     *            the reference
+     * @return the canonical form
+     * @throws MalformedUriException
+     *             when a reference with a scheme or an authority of its own
+     *             can not be parsed as a URL
+     */
+    public String canonicalize(String reference) throws MalformedUriException {
+        StringBuilder out = new StringBuilder(canonicalPrefix.length() + reference.length() + 16);
+        write(reference, out);
+        return out.toString();
+    }
+
+    /**
+     * Resolves a reference to the canonical form of the target URL, appended
+     * to a builder.
+     *
+     * @param reference
+     *            the reference
+     * @param out
+     *            the builder
+     * @return the builder
+     * @throws MalformedUriException
+     *             when a reference with a scheme or an authority of its own
+     *             can not be parsed as a URL
+     */
+    public StringBuilder canonicalize(String reference, StringBuilder out) throws MalformedUriException {
+        write(reference, out);
+        return out;
+    }
+
+    /**
+     * Resolves a reference to the 64-bit fingerprint of the canonical form of
+     * the target URL, without building the canonical form.
+     *
+     * @param reference
+     *            the reference
+     * @return the fingerprint
+     * @throws MalformedUriException
+     *             when a reference with a scheme or an authority of its own
+     *             can not be parsed as a URL
+     */
+    public long fingerprint(String reference) throws MalformedUriException {
+        Fingerprint fingerprint = canonicalizer.resetFingerprint();
+        write(reference, fingerprint);
+        return fingerprint.getLow();
+    }
+
+    private void write(String reference, Appendable out) throws MalformedUriException {
+        try {
+            int colon = UrlLexer.scheme(reference, 0, reference.length());
+            if (colon < 0 && !reference.startsWith("//")) {
+                resolveRelative(reference);
+                out.append(canonicalPrefix);
+                canonicalizer.writeReference(target, hasHost, targetQuery, base.getQuerySeparator(), targetFragment, out);
+            } else {
+                builder.setLength(0);
+                if (colon < 0) {
+                    builder.append(scheme).append(':');
+                }
+                appendAbsolute(reference, colon + 1, builder);
+                canonicalizer.write(new Url(builder.toString(), base.getEncoding(), base.getQuerySeparator()), out);
+            }
+        } catch (IOException e) {
+            // Not thrown by string builders and fingerprints
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Appends a reference with a scheme or an authority, from the offset after
+     * the scheme, with dot segments removed from its path.
+     */
+    private StringBuilder appendAbsolute(String reference, int offset, StringBuilder out) {
+        int length = reference.length();
+        int start = offset;
+        if (reference.startsWith("//", offset)) {
+            start = offset + 2;
+            while (start < length && "/?#".indexOf(reference.charAt(start)) < 0) {
+                start++;
+            }
+        }
+        int end = start;
+        while (end < length && reference.charAt(end) != '?' && reference.charAt(end) != '#') {
+            end++;
+        }
+        out.append(reference, 0, start);
+        int mark = out.length();
+        out.append(reference, start, end);
+        if (hasDotSegment(reference, start, end)) {
+            target.setLength(0);
+            target.append(out, mark, out.length());
+            Canonicalizer.removeDotSegments(target);
+            out.setLength(mark);
+            out.append(target);
+        }
+        return out.append(reference, end, length);
+    }
+
+    /**
+     * Resolves a reference without scheme and authority into the target path,
+     * query and fragment.
+     */
+    private void resolveRelative(String reference) {
+        int length = reference.length();
+        int hash = reference.indexOf('#');
+        int end = hash < 0 ? length : hash;
+        int question = reference.indexOf('?');
+        if (end < question) {
+            question = -1; // in the fragment
+        }
+        int pathEnd = question < 0 ? end : question;
+        targetFragment = hash < 0 ? null : reference.substring(hash + 1);
+        targetQuery = question < 0 ? null : reference.substring(question + 1, end);
+        target.setLength(0);
+        if (pathEnd == 0) {
+            target.append(path);
+            if (question < 0) {
+                targetQuery = query;
+            }
+        } else if (reference.charAt(0) == '/') {
+            target.append(reference, 0, pathEnd);
+            Canonicalizer.removeDotSegments(target);
+        } else if (segments.length == 0 || directory.charAt(0) != '/') {
+            target.append(directory).append(reference, 0, pathEnd);
+            Canonicalizer.removeDotSegments(target);
+        } else {
+            int depth = segments.length;
+            int i = 0;
+            while (i < pathEnd && reference.charAt(i) == '.') {
+                if (i + 1 == pathEnd || reference.charAt(i + 1) == '/') {
+                    i += 2; // "./" or "."
+                } else if (reference.charAt(i + 1) == '.' && (i + 2 == pathEnd || reference.charAt(i + 2) == '/')) {
+                    depth = Math.max(depth - 1, 1);
+                    i += 3; // "../" or ".."
+                } else {
+                    break;
+                }
+            }
+            target.append(directory, 0, segments[depth - 1]);
+            if (i < pathEnd) {
+                target.append(reference, i, pathEnd);
+                if (hasDotSegment(reference, i, pathEnd)) {
+                    Canonicalizer.removeDotSegments(target);
+                }
+            }
+        }
+    }
+
+    /**
+     * Tells whether a path has a "." or ".." segment.
+     */
+    private static boolean hasDotSegment(String path, int start, int end) {
+        for (int i = start; i < end; i++) {
+            if (path.charAt(i) == '.' && (i == start || path.charAt(i - 1) == '/')) {
+                int next = i + 1 < end && path.charAt(i + 1) == '.' ? i + 2 : i + 1;
+                if (next == end || path.charAt(next) == '/') {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+}
@@ -0,0 +1,209 @@
+/*
+ * Copyright (C) 2013 Jajja Communications AB
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.jajja.arachne.net;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.List;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * A rule of the public suffix list, as defined by a line in one of the suffix
+ * files. Besides the normal, wildcard and exception ("!") rules of the
+ * specification, rules prefixed with "?" are exact; they only match a domain
+ * with exactly as many labels as the rule itself.
+ *
+ * @author Martin Korinth <martin.korinth@jajja.com>
+ */
+class Rule {
+
+    static final String[] ICANN_FILES = { "icann_effective_tld_names.dat", "icann_patch_tld_names.dat" };
+    static final String[] PRIVATE_FILES = { "private_effective_tld_names.dat", "private_patch_tld_names.dat" };
+    private static final String OVERRIDE_DIRECTORY = "/usr/share/arachne";
+    private static Log log = LogFactory.getLog(Rule.class);
+
+    private String rule;
+
+    private boolean isException;
+
+    private boolean isExact;
+
+    private String[] patterns;
+
+    Rule(String rule) {
+        this.rule = rule;
+        isException = rule.startsWith("!");
+        isExact = rule.startsWith("?");
+        isException = isException || isExact;
+        String ascii = Idna.toAscii(rule.replaceAll("[!?]", ""));
+        if (ascii == null)
+            throw new IllegalArgumentException("Invalid international domain name in rule " + rule);
+        patterns = ascii.split("\\.");
+    }
+
+    String getRule() {
+        return rule;
+    }
+
+    boolean isException() {
+        return isException;
+    }
+
+    boolean isExact() {
+        return isExact;
+    }
+
+    String[] getPatterns() {
+        return patterns;
+    }
+
+    static List<Rule> loadIcann() {
+        return load(ICANN_FILES);
+    }
+
+    static List<Rule> loadPrivate() {
+        return load(PRIVATE_FILES);
+    }
+
+    /**
+     * Tells whether any of the suffix files are overridden by a file resource
+     * in the system wide directory.
+     *
+     * @return true if any suffix file is overridden, false otherwise
+     */
+    static boolean isOverridden() {
+        for (File override : getOverrides()) {
+            if (override.isFile()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Provides the overriding file resources of the suffix files, whether they
+     * exist or not.
+     *
+     * @return the overriding files
+     */
+    static File[] getOverrides() {
+        File[] overrides = new File[ICANN_FILES.length + PRIVATE_FILES.length];
+        int i = 0;
+        for (String[] files : new String[][] { ICANN_FILES, PRIVATE_FILES }) {
+            for (String file : files) {
+                overrides[i++] = new File(OVERRIDE_DIRECTORY + "/suffix/" + file);
+            }
+        }
+        return overrides;
+    }
+
+    /**
+     * Loads rules from suffix files in the given directory, ignoring any
+     * overriding file resources.
+     *
+     * @param directory
+     *            the directory of the suffix files
+     * @param files
+     *            the file names, in order of precedence
+     * @return the rules in order of precedence
+     * @throws IOException
+     *             when a suffix file can not be opened
+     */
+    static List<Rule> load(File directory, String[] files) throws IOException {
+        List<Rule> rules = new LinkedList<Rule>();
+        for (String file : files) {
+            rules.addAll(read(new FileInputStream(new File(directory, file))));
+        }
+        return rules;
+    }
+
+    private static List<Rule> load(String[] files) {
+        List<Rule> rules = new LinkedList<Rule>();
+        for (String file : files) {
+            rules.addAll(read("/suffix/" + file));
+        }
+        return rules;
+    }
+
+    private static List<Rule> read(String file) {
+        List<Rule> rules = null;
+        try {
+            log.info("Trying file resource for " + file);
+            rules = read(new FileInputStream(new File(OVERRIDE_DIRECTORY + file)));
+        } catch (Exception e) {
+            log.info("Trying class path resource for effective TLD names " + file);
+            rules = read(Rule.class.getResourceAsStream(file));
+        }
+        return rules != null ? rules : new LinkedList<Rule>();
+    }
+
+    private static List<Rule> read(InputStream inputStream) {
+        BufferedReader bufferedReader = null;
+        List<Rule> rules = new LinkedList<Rule>();
+        try {
+            bufferedReader = new BufferedReader(new InputStreamReader(inputStream, "UTF-8"));
+            String line = null;
+            while ((line = bufferedReader.readLine()) != null) {
+                if (!line.matches("(\\s+.*)|(/+.*)") && !line.isEmpty()) {
+                    try {
+                        rules.add(new Rule(line.trim()));
+                    } catch (Exception e) {
+                        log.error("Failed to parse public domain suffix rule from line: " + line, e);
+                    }
+                }
+            }
+        } catch (Exception e) {
+            log.warn("Failed to read line", e);
+        } finally {
+            if (bufferedReader != null) {
+                try {
+                    bufferedReader.close();
+                } catch (IOException e) {
+                    log.warn("Failed to close reader", e);
+                }
+            }
+        }
+        return rules;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder();
+        builder.append("[ definition => ");
+        builder.append(rule);
+        builder.append(", labels => ");
+        builder.append(Arrays.asList(patterns));
+        builder.append(", isException => ");
+        builder.append(isException);
+        builder.append(" ]");
+        return builder.toString();
+    }
+
+}
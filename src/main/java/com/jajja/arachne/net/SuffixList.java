@@ -0,0 +1,167 @@
+/*
+ * Copyright (C) 2013 Jajja Communications AB
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.jajja.arachne.net;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * The registry of public suffix rules used by {@link Domain}.
+ *
+ * The rules are held as an immutable snapshot, which is replaced atomically
+ * when the rules are reloaded, either on demand or by watching the suffix
+ * files in /usr/share/arachne/suffix for changes. Matching a domain reads the
+ * current snapshot once, without locking, and keeps a consistent view of the
+ * rules even if a reload completes in the meantime.
+ *
+ * A reload that yields no ICANN rules, such as when a suffix file is
+ * truncated while being replaced, is discarded and the current rules are kept.
+ *
+ * @author Martin Korinth <martin.korinth@jajja.com>
+ */
+public final class SuffixList {
+
+    private static Log log = LogFactory.getLog(SuffixList.class);
+    private static final AtomicReference<SuffixRules> rules = new AtomicReference<SuffixRules>(SuffixRules.load());
+    private static ScheduledExecutorService watcher;
+    private static ScheduledFuture<?> watch;
+
+    private SuffixList() {
+    }
+
+    /**
+     * Provides the current snapshot of the rules.
+     *
+     * @return the rules
+     */
+    static SuffixRules get() {
+        return rules.get();
+    }
+
+    /**
+     * Reloads the rules, from the overriding suffix files in
+     * /usr/share/arachne/suffix if any, otherwise from the class path.
+     *
+     * @return true if the rules were replaced, false if the reloaded rules
+     *         were discarded
+     */
+    public static boolean reload() {
+        return publish(SuffixRules.load());
+    }
+
+    /**
+     * Reloads the rules from the suffix files in the given directory.
+     *
+     * @param directory
+     *            the directory of the suffix files
+     * @return true if the rules were replaced, false if the reloaded rules
+     *         were discarded
+     * @throws IOException
+     *             when a suffix file can not be read
+     */
+    public static boolean reload(File directory) throws IOException {
+        return publish(SuffixRules.parse(directory));
+    }
+
+    /**
+     * Starts watching the overriding suffix files in /usr/share/arachne/suffix
+     * for changes, reloading the rules in a background thread when a file is
+     * created, modified or removed. Any previous watch is cancelled.
+     *
+     * @param period
+     *            the period between checks for changes
+     * @param unit
+     *            the time unit of the period
+     */
+    public static synchronized void watch(long period, TimeUnit unit) {
+        unwatch();
+        if (watcher == null) {
+            watcher = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "arachne-suffix-watcher");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        watch = watcher.scheduleWithFixedDelay(new Watch(), period, period, unit);
+    }
+
+    /**
+     * Stops watching the suffix files for changes.
+     */
+    public static synchronized void unwatch() {
+        if (watch != null) {
+            watch.cancel(false);
+            watch = null;
+        }
+    }
+
+    private static boolean publish(SuffixRules reloaded) {
+        if (reloaded.getIcann().size() == 0) {
+            log.warn("Discarded reloaded effective TLD names without ICANN rules");
+            return false;
+        }
+        rules.set(reloaded);
+        log.info("Reloaded effective TLD names with " + reloaded.getIcann().size() + " ICANN rules and " + reloaded.getPrivate().size() + " private rules");
+        return true;
+    }
+
+    private static long signature() {
+        long signature = 17;
+        for (File override : Rule.getOverrides()) {
+            signature = 31 * signature + override.lastModified();
+            signature = 31 * signature + override.length();
+        }
+        return signature;
+    }
+
+    private static class Watch implements Runnable {
+
+        private long signature = signature();
+
+        @Override
+        public void run() {
+            try {
+                long signature = signature();
+                if (signature != this.signature) {
+                    this.signature = signature;
+                    reload();
+                }
+            } catch (Exception e) {
+                log.warn("Failed to reload effective TLD names", e);
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,244 @@
+/*
+ * Copyright (C) 2013 Jajja Communications AB
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.jajja.arachne.net;
+
+import java.nio.charset.Charset;
+
+/**
+ * A reusable matcher of host names against the public suffix list, which
+ * provides offsets into the matched name rather than a {@link Domain} and its
+ * {@link Record}s. The matcher does not allocate when matching, leaving it to
+ * the caller to slice or hash the registered domain or suffix from the input.
+ *
+ * The results are the same as those of {@link Domain}, except that the name is
+ * expected to be ASCII, i.e. already converted from any international form.
+ * Letters may be in any case. A matcher is not thread safe; use one matcher
+ * per thread.
+ *
+ * <pre>
+ * SuffixMatcher matcher = new SuffixMatcher();
+ * if (matcher.match(host) &amp;&amp; matcher.isRegistered()) {
+ *     CharSequence registered = host.subSequence(matcher.getRegisteredStart(), matcher.getEnd());
+ * }
+ * </pre>
+ *
+ * @author Martin Korinth <martin.korinth@jajja.com>
+ */
+public final class SuffixMatcher {
+
+    private static final Charset ASCII = Charset.forName("US-ASCII");
+
+    private final int[] labels = new int[DomainLexer.offsets(DomainLexer.MAX_LENGTH)];
+    private final SuffixTrie.Walk walk = new SuffixTrie.Walk();
+    private final Ascii ascii = new Ascii();
+    private int end;
+    private int icannStart;
+    private int icannSuffixStart;
+    private int subleasedStart;
+    private int subleasedSuffixStart;
+
+    /**
+     * Matches a host name.
+     *
+     * @param name
+     *            the host name
+     * @return true if the name is a valid domain name, false otherwise
+     */
+    public boolean match(CharSequence name) {
+        return match(name, 0, name.length());
+    }
+
+    /**
+     * Matches a host name in a range of characters.
+     *
+     * @param name
+     *            the characters containing the host name
+     * @param start
+     *            the start of the host name
+     * @param end
+     *            the end of the host name, exclusive
+     * @return true if the name is a valid domain name, false otherwise
+     */
+    public boolean match(CharSequence name, int start, int end) {
+        this.end = -1;
+        icannStart = -1;
+        icannSuffixStart = -1;
+        subleasedStart = -1;
+        subleasedSuffixStart = -1;
+        int count = DomainLexer.lex(name, start, end, labels);
+        if (count < 0) {
+            return false;
+        }
+        this.end = labels[count] - 1;
+        SuffixRules rules = SuffixList.get();
+        rules.getIcann().match(walk.reset(name, labels, count));
+        if (0 <= walk.entry) {
+            int icann = walk.entry;
+            icannStart = labels[icann];
+            icannSuffixStart = labels[walk.suffix];
+            rules.getPrivate().match(walk.reset(name, labels, count));
+            if (0 <= walk.entry && !(walk.entry == icann - 1 && walk.isWww(walk.entry))) {
+                subleasedStart = labels[walk.entry];
+                subleasedSuffixStart = labels[walk.suffix];
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Matches an ASCII host name in a range of bytes.
+     *
+     * @param name
+     *            the bytes containing the host name
+     * @param start
+     *            the start of the host name
+     * @param end
+     *            the end of the host name, exclusive
+     * @return true if the name is a valid domain name, false otherwise
+     */
+    public boolean match(byte[] name, int start, int end) {
+        ascii.bytes = name;
+        try {
+            return match(ascii, start, end);
+        } finally {
+            ascii.bytes = null;
+        }
+    }
+
+    /**
+     * Provides the end of the matched name, excluding any terminating dot.
+     *
+     * @return the end of the name, exclusive, or -1 if the name was invalid
+     */
+    public int getEnd() {
+        return end;
+    }
+
+    /**
+     * Tells whether the matched name has an ICANN registered part.
+     *
+     * @return true if the name is ICANN registered, false otherwise
+     */
+    public boolean isIcannRegistered() {
+        return 0 <= icannStart;
+    }
+
+    /**
+     * Provides the start of the ICANN registered part of the matched name,
+     * e.g. of "foo.co.uk" in "baz.bar.foo.co.uk".
+     *
+     * @return the start of the ICANN registered part, or -1
+     */
+    public int getIcannRegisteredStart() {
+        return icannStart;
+    }
+
+    /**
+     * Provides the start of the suffix of the ICANN registered part of the
+     * matched name, e.g. of "co.uk" in "baz.bar.foo.co.uk".
+     *
+     * @return the start of the suffix of the ICANN registered part, or -1
+     */
+    public int getIcannRegisteredSuffixStart() {
+        return icannSuffixStart;
+    }
+
+    /**
+     * Tells whether the matched name has a subleased part.
+     *
+     * @return true if the name is subleased, false otherwise
+     */
+    public boolean isSubleased() {
+        return 0 <= subleasedStart;
+    }
+
+    /**
+     * Provides the start of the subleased part of the matched name, e.g. of
+     * "foo.dyndns.org" in "baz.bar.foo.dyndns.org".
+     *
+     * @return the start of the subleased part, or -1
+     */
+    public int getSubleasedStart() {
+        return subleasedStart;
+    }
+
+    /**
+     * Provides the start of the suffix of the subleased part of the matched
+     * name, e.g. of "dyndns.org" in "baz.bar.foo.dyndns.org".
+     *
+     * @return the start of the suffix of the subleased part, or -1
+     */
+    public int getSubleasedSuffixStart() {
+        return subleasedSuffixStart;
+    }
+
+    /**
+     * Tells whether the matched name is registered.
+     *
+     * @return true if the name is registered, false otherwise
+     */
+    public boolean isRegistered() {
+        return 0 <= icannStart;
+    }
+
+    /**
+     * Provides the start of the registered part of the matched name, which is
+     * the subleased part if any, otherwise the ICANN registered part.
+     *
+     * @return the start of the registered part, or -1
+     */
+    public int getRegisteredStart() {
+        return isSubleased() ? subleasedStart : icannStart;
+    }
+
+    /**
+     * Provides the start of the suffix of the registered part of the matched
+     * name.
+     *
+     * @return the start of the suffix of the registered part, or -1
+     */
+    public int getRegisteredSuffixStart() {
+        return isSubleased() ? subleasedSuffixStart : icannSuffixStart;
+    }
+
+    private static class Ascii implements CharSequence {
+
+        private byte[] bytes;
+
+        @Override
+        public int length() {
+            return bytes.length;
+        }
+
+        @Override
+        public char charAt(int index) {
+            return (char) (bytes[index] & 0xff);
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            return new String(bytes, start, end - start, ASCII);
+        }
+
+    }
+
+}
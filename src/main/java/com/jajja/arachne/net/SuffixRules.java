@@ -0,0 +1,147 @@
+/*
+ * Copyright (C) 2013 Jajja Communications AB
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.jajja.arachne.net;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * The ICANN and private public suffix rules, compiled into tries.
+ *
+ * The rules are preferably loaded from a binary resource compiled at build
+ * time by {@link SuffixCompiler}, which spares the parsing of the suffix files.
+ * When any suffix file is overridden in /usr/share/arachne/suffix, or when the
+ * binary resource is missing, the rules are parsed from the suffix files.
+ *
+ * @author Martin Korinth <martin.korinth@jajja.com>
+ */
+final class SuffixRules {
+
+    static final String BINARY = "/suffix/effective_tld_names.bin";
+    private static final int MAGIC = 0x41525354; // ARST
+    private static final int VERSION = 1;
+    private static Log log = LogFactory.getLog(SuffixRules.class);
+
+    private final SuffixTrie icann;
+    private final SuffixTrie subleased;
+
+    SuffixRules(SuffixTrie icann, SuffixTrie subleased) {
+        this.icann = icann;
+        this.subleased = subleased;
+    }
+
+    SuffixTrie getIcann() {
+        return icann;
+    }
+
+    SuffixTrie getPrivate() {
+        return subleased;
+    }
+
+    /**
+     * Loads the rules from the binary resource, or from the suffix files if
+     * overridden.
+     *
+     * @return the rules
+     */
+    static SuffixRules load() {
+        if (!Rule.isOverridden()) {
+            InputStream inputStream = SuffixRules.class.getResourceAsStream(BINARY);
+            if (inputStream != null) {
+                try {
+                    return read(inputStream);
+                } catch (IOException e) {
+                    log.warn("Failed to read compiled effective TLD names " + BINARY, e);
+                } finally {
+                    try {
+                        inputStream.close();
+                    } catch (IOException e) {
+                        log.warn("Failed to close stream", e);
+                    }
+                }
+            }
+        }
+        return new SuffixRules(SuffixTrie.build(Rule.loadIcann()), SuffixTrie.build(Rule.loadPrivate()));
+    }
+
+    /**
+     * Parses the rules from the suffix files in a directory.
+     *
+     * @param directory
+     *            the directory of the suffix files
+     * @return the rules
+     * @throws IOException
+     *             when a suffix file can not be read
+     */
+    static SuffixRules parse(File directory) throws IOException {
+        return new SuffixRules(SuffixTrie.build(Rule.load(directory, Rule.ICANN_FILES)),
+                SuffixTrie.build(Rule.load(directory, Rule.PRIVATE_FILES)));
+    }
+
+    /**
+     * Reads rules as written by {@link #write(OutputStream)}.
+     *
+     * @param inputStream
+     *            the stream to read from
+     * @return the rules
+     * @throws IOException
+     *             when the stream can not be read, or is not compiled rules
+     */
+    static SuffixRules read(InputStream inputStream) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(inputStream, 65536));
+        if (in.readInt() != MAGIC)
+            throw new IOException("Not compiled effective TLD names!");
+        int version = in.readInt();
+        if (version != VERSION)
+            throw new IOException("Unsupported version of compiled effective TLD names: " + version);
+        SuffixTrie icann = SuffixTrie.read(in);
+        SuffixTrie subleased = SuffixTrie.read(in);
+        return new SuffixRules(icann, subleased);
+    }
+
+    /**
+     * Writes the compiled rules.
+     *
+     * @param outputStream
+     *            the stream to write to
+     * @throws IOException
+     *             when the stream can not be written
+     */
+    void write(OutputStream outputStream) throws IOException {
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(outputStream));
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        icann.write(out);
+        subleased.write(out);
+        out.flush();
+    }
+
+}
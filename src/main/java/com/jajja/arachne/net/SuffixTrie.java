@@ -0,0 +1,461 @@
+/*
+ * Copyright (C) 2013 Jajja Communications AB
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.jajja.arachne.net;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * An immutable trie of public suffix rules, keyed by label from the top level
+ * domain inward. Matching a domain walks the trie once along its labels,
+ * following both the literal label and any wildcard at each level, so the cost
+ * is proportional to the number of labels rather than the number of rules.
+ *
+ * The precedence of the matched rules is that of the suffix list files: exact
+ * rules ("?") before exception rules ("!") before normal rules, the longest
+ * rule first within each kind and the first listed rule on ties.
+ *
+ * Labels are looked up by range in the matched name, ignoring ASCII case, so
+ * a match does not allocate.
+ *
+ * @author Martin Korinth <martin.korinth@jajja.com>
+ */
+final class SuffixTrie {
+
+    private static final String WILDCARD = "*";
+
+    private final Node root;
+    private final String[] rules;
+
+    private SuffixTrie(Node root, String[] rules) {
+        this.root = root;
+        this.rules = rules;
+    }
+
+    /**
+     * Builds a trie from rules in list order, where the order decides
+     * precedence between rules of equal kind and length.
+     *
+     * @param rules
+     *            the rules
+     * @return the trie
+     */
+    static SuffixTrie build(List<Rule> rules) {
+        Node root = new Node();
+        String[] definitions = new String[rules.size()];
+        int index = 0;
+        for (Rule rule : rules) {
+            definitions[index] = rule.getRule();
+            String[] patterns = rule.getPatterns();
+            Node node = root;
+            for (int i = patterns.length - 1; 0 <= i; i--) {
+                node = node.add(patterns[i].toLowerCase());
+            }
+            if (rule.isExact()) {
+                if (node.exact < 0) {
+                    node.exact = index;
+                }
+            } else if (rule.isException()) {
+                if (node.exception < 0) {
+                    node.exception = index;
+                }
+            } else if (node.normal < 0) {
+                node.normal = index;
+            }
+            index++;
+        }
+        root.shade(0);
+        return new SuffixTrie(root, definitions);
+    }
+
+    /**
+     * Provides the number of rules in the trie.
+     *
+     * @return the number of rules
+     */
+    int size() {
+        return rules.length;
+    }
+
+    /**
+     * Provides a rule definition.
+     *
+     * @param index
+     *            the index of the rule
+     * @return the rule definition, e.g. "*.kobe.jp"
+     */
+    String getRule(int index) {
+        return rules[index];
+    }
+
+    /**
+     * Matches the labels of a domain against the rules, leaving the result in
+     * the walk.
+     *
+     * @param walk
+     *            the walk, reset for the domain to match
+     */
+    void match(Walk walk) {
+        walk.walk(root, 0);
+        walk.resolve();
+    }
+
+    /**
+     * Writes the compiled trie, including the resolved precedence of its rules.
+     *
+     * @param out
+     *            the output to write to
+     * @throws IOException
+     *             when writing fails
+     */
+    void write(DataOutput out) throws IOException {
+        out.writeInt(rules.length);
+        for (String rule : rules) {
+            out.writeUTF(rule);
+        }
+        root.write(out);
+    }
+
+    /**
+     * Reads a trie as written by {@link #write(DataOutput)}, without parsing
+     * or sorting any rules.
+     *
+     * @param in
+     *            the input to read from
+     * @return the trie
+     * @throws IOException
+     *             when reading fails
+     */
+    static SuffixTrie read(DataInput in) throws IOException {
+        String[] rules = new String[in.readInt()];
+        for (int i = 0; i < rules.length; i++) {
+            rules[i] = in.readUTF();
+        }
+        return new SuffixTrie(Node.read(in), rules);
+    }
+
+    private static boolean isBefore(int depth, int index, int otherDepth, int otherIndex) {
+        return otherIndex < 0 || otherDepth < depth || (otherDepth == depth && index < otherIndex);
+    }
+
+    private static int lower(char c) {
+        return c >= 'A' && c <= 'Z' ? c + ('a' - 'A') : c;
+    }
+
+    private static int hash(CharSequence name, int start, int end) {
+        int hash = 0;
+        for (int i = start; i < end; i++) {
+            hash = 31 * hash + lower(name.charAt(i));
+        }
+        return hash ^ (hash >>> 16);
+    }
+
+    /**
+     * The state of a match, which may be reused for matching any number of
+     * domains. After a match, the rule is the index of the matching rule or
+     * -1, and the entry and suffix are the indices of their first labels, or
+     * -1 when the domain itself is a public suffix.
+     */
+    static final class Walk {
+
+        private CharSequence name;
+        private int[] labels;
+        private int count;
+        private int exact;
+        private int exception;
+        private int exceptionDepth;
+        private int normal;
+        private int normalDepth;
+        private int shadow;
+        private int shadowDepth;
+        int rule;
+        int entry;
+        int suffix;
+
+        Walk reset(CharSequence name, int[] labels, int count) {
+            this.name = name;
+            this.labels = labels;
+            this.count = count;
+            exact = -1;
+            exception = -1;
+            normal = -1;
+            shadow = -1;
+            rule = -1;
+            entry = -1;
+            suffix = -1;
+            return this;
+        }
+
+        /**
+         * Tells whether a label is "www", e.g. to tell whether one entry is
+         * another entry prefixed by "www.".
+         */
+        boolean isWww(int label) {
+            int start = labels[label];
+            return labels[label + 1] - start == 4
+                    && (name.charAt(start) | 0x20) == 'w' && (name.charAt(start + 1) | 0x20) == 'w'
+                    && (name.charAt(start + 2) | 0x20) == 'w';
+        }
+
+        private void walk(Node node, int depth) {
+            if (0 <= node.exception && isBefore(depth, node.exception, exceptionDepth, exception)) {
+                exception = node.exception;
+                exceptionDepth = depth;
+            }
+            if (depth == count) {
+                if (0 <= node.exact && (exact < 0 || node.exact < exact)) {
+                    exact = node.exact;
+                }
+                if (0 <= node.shadow && isBefore(node.shadowDepth, node.shadow, shadowDepth, shadow)) {
+                    shadow = node.shadow;
+                    shadowDepth = node.shadowDepth;
+                }
+                return;
+            }
+            if (0 <= node.normal && isBefore(depth, node.normal, normalDepth, normal)) {
+                normal = node.normal;
+                normalDepth = depth;
+            }
+            int label = count - depth - 1;
+            Node child = node.child(name, labels[label], labels[label + 1] - 1);
+            if (child != null) {
+                walk(child, depth + 1);
+            }
+            if (node.wildcard != null) {
+                walk(node.wildcard, depth + 1);
+            }
+        }
+
+        private void resolve() {
+            if (0 <= exact) {
+                rule = exact;
+                entry = 0;
+                suffix = count == 1 ? 0 : 1;
+            } else if (0 <= exception) {
+                rule = exception;
+                entry = count - exceptionDepth;
+                suffix = entry;
+            } else if (0 <= shadow) {
+                rule = shadow;
+            } else if (0 <= normal) {
+                rule = normal;
+                entry = count - normalDepth - 1;
+                suffix = count - normalDepth;
+            }
+        }
+
+    }
+
+    private static class Node {
+
+        private static final int EXACT = 1;
+        private static final int EXCEPTION = 2;
+        private static final int NORMAL = 4;
+        private static final int SHADOW = 8;
+
+        private String[] keys;
+        private Node[] children;
+        private int size;
+        private Node wildcard;
+        private int exact = -1;
+        private int exception = -1;
+        private int normal = -1;
+        private int shadow = -1;
+        private int shadowDepth;
+
+        private Node child(CharSequence name, int start, int end) {
+            if (keys == null) {
+                return null;
+            }
+            int mask = keys.length - 1;
+            for (int i = hash(name, start, end) & mask; keys[i] != null; i = (i + 1) & mask) {
+                String key = keys[i];
+                if (key.length() == end - start) {
+                    int j = 0;
+                    while (j < key.length() && key.charAt(j) == lower(name.charAt(start + j))) {
+                        j++;
+                    }
+                    if (j == key.length()) {
+                        return children[i];
+                    }
+                }
+            }
+            return null;
+        }
+
+        private Node add(String label) {
+            if (WILDCARD.equals(label)) {
+                if (wildcard == null) {
+                    wildcard = new Node();
+                }
+                return wildcard;
+            }
+            Node child = child(label, 0, label.length());
+            if (child == null) {
+                child = new Node();
+                put(label, child);
+            }
+            return child;
+        }
+
+        private void put(String label, Node child) {
+            if (keys == null || keys.length <= 2 * (size + 1)) {
+                String[] keys = this.keys;
+                Node[] children = this.children;
+                int capacity = 4;
+                while (capacity <= 2 * (size + 1)) {
+                    capacity <<= 1;
+                }
+                this.keys = new String[capacity];
+                this.children = new Node[capacity];
+                size = 0;
+                if (keys != null) {
+                    for (int i = 0; i < keys.length; i++) {
+                        if (keys[i] != null) {
+                            put(keys[i], children[i]);
+                        }
+                    }
+                }
+            }
+            int mask = keys.length - 1;
+            int i = hash(label, 0, label.length()) & mask;
+            while (keys[i] != null) {
+                i = (i + 1) & mask;
+            }
+            keys[i] = label;
+            children[i] = child;
+            size++;
+        }
+
+        private void write(DataOutput out) throws IOException {
+            int flags = (0 <= exact ? EXACT : 0) | (0 <= exception ? EXCEPTION : 0) | (0 <= normal ? NORMAL : 0) | (0 <= shadow ? SHADOW : 0);
+            out.writeByte(flags);
+            writeIndex(out, flags, EXACT, exact);
+            writeIndex(out, flags, EXCEPTION, exception);
+            writeIndex(out, flags, NORMAL, normal);
+            if (0 <= shadow) {
+                writeVarint(out, shadow);
+                out.writeByte(shadowDepth);
+            }
+            writeVarint(out, size + (wildcard != null ? 1 : 0));
+            if (wildcard != null) {
+                out.writeUTF(WILDCARD);
+                wildcard.write(out);
+            }
+            if (keys != null) {
+                for (int i = 0; i < keys.length; i++) {
+                    if (keys[i] != null) {
+                        out.writeUTF(keys[i]);
+                        children[i].write(out);
+                    }
+                }
+            }
+        }
+
+        private static Node read(DataInput in) throws IOException {
+            Node node = new Node();
+            int flags = in.readUnsignedByte();
+            node.exact = readIndex(in, flags, EXACT);
+            node.exception = readIndex(in, flags, EXCEPTION);
+            node.normal = readIndex(in, flags, NORMAL);
+            node.shadow = readIndex(in, flags, SHADOW);
+            if (0 <= node.shadow) {
+                node.shadowDepth = in.readUnsignedByte();
+            }
+            int size = readVarint(in);
+            for (int i = 0; i < size; i++) {
+                String label = in.readUTF();
+                Node child = read(in);
+                if (WILDCARD.equals(label)) {
+                    node.wildcard = child;
+                } else {
+                    node.put(label, child);
+                }
+            }
+            return node;
+        }
+
+        private static void writeIndex(DataOutput out, int flags, int flag, int index) throws IOException {
+            if ((flags & flag) != 0) {
+                writeVarint(out, index);
+            }
+        }
+
+        private static int readIndex(DataInput in, int flags, int flag) throws IOException {
+            return (flags & flag) != 0 ? readVarint(in) : -1;
+        }
+
+        private static void writeVarint(DataOutput out, int value) throws IOException {
+            while ((value & ~0x7f) != 0) {
+                out.writeByte((value & 0x7f) | 0x80);
+                value >>>= 7;
+            }
+            out.writeByte(value);
+        }
+
+        private static int readVarint(DataInput in) throws IOException {
+            int value = 0;
+            for (int shift = 0; shift < 32; shift += 7) {
+                int b = in.readUnsignedByte();
+                value |= (b & 0x7f) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+            throw new IOException("Malformed variable length integer!");
+        }
+
+        /**
+         * Resolves the normal rule that takes precedence among this node and
+         * its descendants, which is the rule matched by a domain that is itself
+         * the suffix of this node.
+         */
+        private void shade(int depth) {
+            if (0 <= normal) {
+                shadow = normal;
+                shadowDepth = depth;
+            }
+            if (wildcard != null) {
+                shade(wildcard, depth);
+            }
+            if (keys != null) {
+                for (Node child : children) {
+                    if (child != null) {
+                        shade(child, depth);
+                    }
+                }
+            }
+        }
+
+        private void shade(Node child, int depth) {
+            child.shade(depth + 1);
+            if (0 <= child.shadow && isBefore(child.shadowDepth, child.shadow, shadowDepth, shadow)) {
+                shadow = child.shadow;
+                shadowDepth = child.shadowDepth;
+            }
+        }
+
+    }
+
+}
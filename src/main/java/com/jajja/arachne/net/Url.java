@@ -21,18 +21,17 @@
  */
 package com.jajja.arachne.net;
 
-import java.io.UnsupportedEncodingException;
 import java.net.URI;
 import java.net.URISyntaxException;
-import java.net.URLDecoder;
-import java.util.HashMap;
-import java.util.Iterator;
+import java.util.Collections;
 import java.util.LinkedList;
+import java.util.List;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 import com.jajja.arachne.exceptions.MalformedDomainException;
 import com.jajja.arachne.exceptions.MalformedUriException;
+import com.jajja.arachne.exceptions.Reason;
 
 /**
  * XXX: First draft for URL with proper URI parsing
@@ -44,93 +43,133 @@ public class Url {
     public final static int REPAIR = 0;
     private final static Pattern schemeValidationPattern = Pattern.compile("^[a-z][a-z0-9*.-]*:", Pattern.CASE_INSENSITIVE);
     private final static Pattern repairPattern = Pattern.compile("^([a-z][a-z0-9*.-]*):/+(.*)", Pattern.CASE_INSENSITIVE);
+    private final static ThreadLocal<Canonicalizer> canonicalizers = new ThreadLocal<Canonicalizer>() {
+        @Override
+        protected Canonicalizer initialValue() {
+            return new Canonicalizer();
+        }
+    };
+    private static final int SCHEME = 1;
+    private static final int USER_INFO = 2;
+    private static final int HOST = 4;
+    private static final int PORT = 8;
+    private static final int PATH = 16;
+    private static final int FRAGMENT = 32;
+    private static final int QUERY = 64;
+    private static final int RAW_QUERY = 128;
+    private static final int PARAMETERS = 256;
+    private static final int EXPOSED = 512;
+
     String string;
     String scheme;
     String userInfo;
     Host host;
     Integer port;
     String path;
-    LinkedList<Parameter> parameters;
+    Parameters parameters;
     String querySeparator = "&";
     String fragment;
     String encoding;
-
-    private void parse() throws MalformedUriException {
-        int pos;
-        String string = this.string;
-        if (!schemeValidationPattern.matcher(string).find()) {
-            throw new MalformedUriException(string, "invalid scheme");
-        }
-
-        if ((pos = string.indexOf('#')) >= 0) {
-            fragment = string.substring(pos + 1);
-            string = string.substring(0, pos);
-        } else {
-            fragment = null;
-        }
-
-        if ((pos = string.indexOf('?')) >= 0) {
-            setQuery(string.substring(pos + 1));
-            string = string.substring(0, pos);
-        } else {
-            setQuery(null);
-        }
-
-        pos = string.indexOf(':');
-        scheme = string.substring(0, pos);
-        string = string.substring(pos + 1);
-
-        if (string.startsWith("//")) {
-            string = string.substring(2);
-        }
-
-        if (string.equals(""))
-            throw new MalformedUriException(string, "missing host or path");
-
-        if (string.charAt(0) == '/') {
-            /* file:/// */
-            path = string;
-        } else {
-            if ((pos = string.indexOf('/')) >= 0) {
-                path = string.substring(pos);
-                string = string.substring(0, pos);
-            } else {
-                path = "";
-            }
-
-            if ((pos = string.indexOf('@')) >= 0) {
-                userInfo = string.substring(0, pos);
-                string = string.substring(pos + 1);
-            } else {
-                userInfo = null;
-            }
-
-            Endpoint endpoint = new Endpoint(string);
-            host = endpoint.getHost();
-            port = endpoint.getPort();
-        }
+    private String query;
+    private int[] offsets;
+    private int lazy; // components yet to be sliced from the string, and the state of the parameters
+
+    private Reason parse() {
+        offsets = new int[UrlLexer.OFFSETS];
+        Reason reason = UrlLexer.lex(string, offsets);
+        if (reason != null)
+            return reason;
+        lazy = SCHEME | USER_INFO | HOST | PORT | PATH | FRAGMENT | QUERY | RAW_QUERY | PARAMETERS;
+        return null;
     }
 
+    /**
+     * Tells whether a parsed URL has a host or a path, from the offsets of the
+     * lexer, leaving the host to be created on first use.
+     */
+    private boolean hasHostOrPath() {
+        return -1 < offsets[UrlLexer.HOST_START] || offsets[UrlLexer.PATH_START] < offsets[UrlLexer.PATH_END];
+    }
+
+    private MalformedUriException exception(Reason reason) {
+        switch (reason) {
+        case INVALID_SCHEME:
+            return new MalformedUriException(string, reason);
+        case MISSING_HOST_OR_PATH:
+            return new MalformedUriException("", reason);
+        default:
+            String endpoint = string.substring(offsets[UrlLexer.ENDPOINT_START], offsets[UrlLexer.PATH_START]);
+            return Endpoint.exception(endpoint, reason, string, offsets);
+        }
+    }
+
+    /**
+     * Creates a copy of a URL. The copy shares the components of the URL, which
+     * are immutable, including the string they are sliced from. Decoded
+     * parameters are shared until either URL modifies them, when the modifying
+     * URL copies them first, unless they have been exposed for modification
+     * through {@link #getParameterList()} or {@link #getParameterMap()}. The
+     * URL is only read, such that a URL may be copied by several threads.
+     *
+     * @param url
+     *            the URL to copy
+     */
     public Url(Url url) {
         querySeparator = url.querySeparator;
         encoding = url.encoding;
-        scheme = url.getScheme();
-        userInfo = url.getUserInfo();
-        host = url.getHost();
-        port = url.getPort();
-        path = url.getPath();
-        setQuery(url.getQuery());
-        fragment = url.getFragment();
+        string = url.string;
+        offsets = url.offsets;
+        scheme = url.scheme;
+        userInfo = url.userInfo;
+        host = url.host;
+        port = url.port;
+        path = url.path;
+        query = url.query;
+        fragment = url.fragment;
+        Parameters parameters = url.parameters;
+        int lazy = url.lazy;
+        if (parameters != null && (lazy & EXPOSED) != 0) {
+            this.parameters = new Parameters(parameters);
+            this.lazy = lazy & ~EXPOSED;
+        } else {
+            this.parameters = parameters == null ? null : parameters.share();
+            this.lazy = lazy;
+        }
     }
 
     public Url(String string, String encoding, String querySeparator) throws MalformedUriException {
         this.string = string;
         this.encoding = encoding;
         this.querySeparator = querySeparator;
-        parse();
-        if (host == null && path == null) {
-            throw new MalformedUriException(string, "no host or path");
-        }
+        Reason reason = parse();
+        if (reason != null) {
+            throw exception(reason);
+        }
+        if (!hasHostOrPath()) {
+            throw new MalformedUriException(string, Reason.NO_HOST_OR_PATH);
+        }
+    }
+
+    private Url() {
+    }
+
+    /**
+     * Creates a URL without parsing it.
+     *
+     * @param string
+     *            the URL
+     * @param encoding
+     *            the encoding of the query, or "detect"
+     * @param querySeparator
+     *            the separator of query parameters
+     * @return the unparsed URL
+     */
+    static Url unparsed(String string, String encoding, String querySeparator) {
+        Url url = new Url();
+        url.string = string;
+        url.encoding = encoding;
+        url.querySeparator = querySeparator;
+        return url;
     }
 
     public Url(String url, String encoding) throws MalformedUriException {
@@ -141,6 +180,37 @@ public class Url {
         this(url, "detect", "&");
     }
 
+    /**
+     * Parses a URL without throwing exceptions for malformed URLs.
+     *
+     * @param string
+     *            the URL
+     * @return the URL, or the reason the string can not be parsed as a URL
+     */
+    public static ParseResult<Url> tryParse(String string) {
+        return tryParse(string, "detect", "&");
+    }
+
+    /**
+     * Parses a URL without throwing exceptions for malformed URLs.
+     *
+     * @param string
+     *            the URL
+     * @param encoding
+     *            the encoding of the query, or "detect"
+     * @param querySeparator
+     *            the separator of query parameters
+     * @return the URL, or the reason the string can not be parsed as a URL
+     */
+    public static ParseResult<Url> tryParse(String string, String encoding, String querySeparator) {
+        Url url = unparsed(string, encoding, querySeparator);
+        Reason reason = url.parse();
+        if (reason == null && !url.hasHostOrPath()) {
+            reason = Reason.NO_HOST_OR_PATH;
+        }
+        return reason == null ? ParseResult.valid(url) : ParseResult.<Url>invalid(reason);
+    }
+
     public static String repairURI(String str) {
         str = str.trim();
         if (!schemeValidationPattern.matcher(str).find()) {
@@ -160,6 +230,10 @@ public class Url {
     }
 
     public String getScheme() {
+        if ((lazy & SCHEME) != 0) {
+            scheme = string.substring(0, offsets[UrlLexer.SCHEME_END]);
+            lazy &= ~SCHEME;
+        }
         return scheme;
     }
 
@@ -171,41 +245,71 @@ public class Url {
             throw new URISyntaxException(scheme, "invalid scheme");
         }
         this.scheme = scheme;
+        lazy &= ~SCHEME;
     }
 
     public String getUserInfo() {
+        if ((lazy & USER_INFO) != 0) {
+            int start = offsets[UrlLexer.USER_INFO_START];
+            userInfo = start < 0 ? null : string.substring(start, offsets[UrlLexer.ENDPOINT_START] - 1);
+            lazy &= ~USER_INFO;
+        }
         return userInfo;
     }
 
     public void setUserinfo(String userinfo) {
         this.userInfo = userinfo;
+        lazy &= ~USER_INFO;
     }
 
     public Host getHost() {
+        if ((lazy & HOST) != 0) {
+            int start = offsets[UrlLexer.HOST_START];
+            try {
+                host = start < 0 ? null : Host.get(string.substring(start, offsets[UrlLexer.HOST_END]));
+            } catch (MalformedDomainException e) {
+                // Validated when parsed
+                throw new RuntimeException(e);
+            }
+            lazy &= ~HOST;
+        }
         return host;
     }
 
     public Domain getDomain() {
+        Host host = getHost();
         return host instanceof Domain ? (Domain) host : null;
     }
 
     public void setHost(Host host) {
         this.host = host;
+        lazy &= ~HOST;
     }
 
     public void setHost(String host) throws MalformedDomainException {
         this.host = Host.get(host);
+        lazy &= ~HOST;
     }
 
     public Integer getPort() {
+        if ((lazy & PORT) != 0) {
+            int port = offsets[UrlLexer.PORT];
+            this.port = port < 0 ? null : Integer.valueOf(port);
+            lazy &= ~PORT;
+        }
         return port;
     }
 
     public void setPort(Integer port) {
         this.port = port;
+        lazy &= ~PORT;
     }
 
     public String getPath() {
+        if ((lazy & PATH) != 0) {
+            path = string.substring(offsets[UrlLexer.PATH_START], offsets[UrlLexer.PATH_END]);
+            lazy &= ~PATH;
+        }
         return path;
     }
 
@@ -215,21 +319,60 @@ public class Url {
         } else {
             this.path = path;
         }
+        lazy &= ~PATH;
     }
 
+    /**
+     * Provides the parameters as a list. The parameters in the list write
+     * through to the URL while they remain in it, such that their names and
+     * values may be set, but adding or removing parameters in the list does
+     * not modify the URL.
+     *
+     * @return the parameters, or null if there is no query
+     * @deprecated use {@link #getParameterList()}, which also writes adding,
+     *             removing and replacing parameters through to the URL
+     */
+    @Deprecated
     public LinkedList<Parameter> getParameters() {
+        List<Parameter> list = getParameterList();
+        return list == null ? null : new LinkedList<Parameter>(list);
+    }
+
+    /**
+     * Provides the parameters as a list, which writes through to the URL:
+     * parameters may be added, removed and replaced in the list, and the names
+     * and values of parameters read from the list may be set.
+     *
+     * @return the parameters, or null if there is no query
+     */
+    public List<Parameter> getParameterList() {
+        modifyParameters();
+        lazy |= EXPOSED;
+        return parameters == null ? null : parameters.asList();
+    }
+
+    /**
+     * Provides the parameters of the query as a multimap, which may be
+     * modified.
+     *
+     * @return the parameters, or null if there is no query
+     */
+    public Parameters getParameterMap() {
+        modifyParameters();
+        lazy |= EXPOSED;
         return parameters;
     }
 
     public void addParameter(Parameter p) {
-        if (parameters == null) {
-            parameters = new LinkedList<Parameter>();
-        }
-        parameters.add(p);
+        addParameter(p.getName(), p.getValue());
     }
 
     public void addParameter(String name, String value) {
-        addParameter(new Parameter(name, value));
+        modifyParameters();
+        if (parameters == null) {
+            parameters = new Parameters();
+        }
+        parameters.add(name, value);
     }
 
     public void addParameter(String name) {
@@ -237,47 +380,81 @@ public class Url {
     }
 
     public Parameter getParameter(String name) {
+        decodeParameters();
         if (parameters == null)
             return null;
 
-        for (Parameter p : parameters) {
-            if (p.getName().equals(name))
-                return new Parameter(p);
-        }
-
-        return null;
+        int index = parameters.indexOf(name);
+        return index < 0 ? null : new Parameter(name, parameters.getValue(index));
+    }
+
+    /**
+     * Provides the value of the first parameter of a name.
+     *
+     * @param name
+     *            the name
+     * @return the value, or null if there is no parameter of the name or it
+     *         has no value
+     */
+    public String getParameterValue(String name) {
+        decodeParameters();
+        return parameters == null ? null : parameters.get(name);
+    }
+
+    /**
+     * Provides the values of the parameters of a name, in order, as a view
+     * that reads through to the parameters without copying them, see
+     * {@link Parameters#getAll(String)}. The view fails once the parameters are
+     * modified.
+     *
+     * @param name
+     *            the name
+     * @return the values, empty if there is no parameter of the name
+     */
+    public List<String> getParameterValues(String name) {
+        decodeParameters();
+        return parameters == null ? Collections.<String>emptyList() : parameters.getAll(name);
     }
 
     public LinkedList<Parameter> getParameters(String name) {
         LinkedList<Parameter> r = new LinkedList<Parameter>();
 
-        if (parameters != null) {
-            for (Parameter p : parameters) {
-                if (p.getName().equals(name))
-                    r.add(new Parameter(p));
-            }
+        for (String value : getParameterValues(name)) {
+            r.add(new Parameter(name, value));
         }
 
         return r;
     }
 
     public void removeParameter(String name) {
-        if (parameters == null)
+        decodeParameters();
+        if (parameters == null || !parameters.contains(name))
             return;
 
-        Iterator<Parameter> i = parameters.iterator();
-        while (i.hasNext()) {
-            Parameter p = i.next();
-            if (p.getName().equals(name))
-                i.remove();
-        }
+        modifyParameters();
+        parameters.remove(name);
         if (parameters.isEmpty())
             parameters = null;
     }
 
     public void setParameter(String name, String value) {
-        removeParameter(name);
-        addParameter(new Parameter(name, value));
+        modifyParameters();
+        if (parameters == null) {
+            parameters = new Parameters();
+        }
+        parameters.set(name, value);
+    }
+
+    /**
+     * Provides the encoding of the query, either "detect" or the name of a
+     * charset. When detecting, the encoding becomes the name of the fallback
+     * charset of {@link QueryDecoder} once a parameter value that is not UTF-8
+     * has been decoded.
+     *
+     * @return the encoding
+     */
+    public String getEncoding() {
+        return encoding;
     }
 
     public String getQuerySeparator() {
@@ -292,17 +469,28 @@ public class Url {
     }
 
     public String getFragment() {
+        if ((lazy & FRAGMENT) != 0) {
+            int start = offsets[UrlLexer.FRAGMENT_START];
+            fragment = start < 0 ? null : string.substring(start, offsets[UrlLexer.END]);
+            lazy &= ~FRAGMENT;
+        }
         return fragment;
     }
 
     public void setFragment(String fragment) {
         this.fragment = fragment;
+        lazy &= ~FRAGMENT;
     }
 
     private static boolean isHex(char ch) {
         return (ch >= '0' && ch <= '9') || (ch >= 'a' && ch <= 'f') || (ch >= 'A' && ch <= 'F');
     }
 
+    private static String name(String query, int start, int end) {
+        String name = query.substring(start, end);
+        return name.indexOf('%') < 0 ? name : fixUrlEncoding(name);
+    }
+
     private static String fixUrlEncoding(String str) {
         //final String validChars = "^][!_$.,+*<>%\"\\'(){}|\\^~0123456789abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ;:-";
         int len = str.length();
@@ -323,61 +511,110 @@ public class Url {
     }
 
     public void setQuery(String query) {
-        if (query == null) {
-            this.parameters = null;
-            return;
+        if (parameters != null) {
+            parameters.release();
         }
+        this.query = query;
+        this.parameters = null;
+        lazy = (lazy & ~(QUERY | EXPOSED)) | RAW_QUERY | PARAMETERS;
+    }
+
+    public String getQuery() {
+        if ((lazy & RAW_QUERY) != 0)
+            return getRawQuery();
+        if (parameters == null)
+            return null;
 
-        LinkedList<Parameter> parameters = new LinkedList<Parameter>();
+        StringBuilder sb = new StringBuilder();
 
-        if (query.equals("")) {
-            this.parameters = parameters;
-            return;
+        for (int i = 0; i < parameters.size(); i++) {
+            if (i != 0) {
+                sb.append(querySeparator);
+            }
+            sb.append(Parameter.toString(parameters.getName(i), parameters.getValue(i)));
         }
 
-        query = fixUrlEncoding(query);
+        return sb.toString();
+    }
 
-        String parts[] = query.split(Pattern.quote(querySeparator));
-        for (String part : parts) {
-            String v[] = part.split("=", 2);
+    /**
+     * Provides the query as parsed or set, before any modification of the
+     * parameters.
+     */
+    private String getRawQuery() {
+        if ((lazy & QUERY) != 0) {
+            int start = offsets[UrlLexer.QUERY_START];
+            int fragment = offsets[UrlLexer.FRAGMENT_START];
+            query = start < 0 ? null : string.substring(start, fragment < 0 ? offsets[UrlLexer.END] : fragment - 1);
+            lazy &= ~QUERY;
+        }
+        return query;
+    }
 
-            if (v.length == 1) {
-                parameters.add(new Parameter(v[0], null));
-            } else {
-                try {
-                    try {
-                        parameters.add(new Parameter(v[0], URLDecoder.decode(v[1], encoding.equals("detect") ? "UTF-8" : encoding)));
-                    } catch (IllegalArgumentException e) {
-                        try {
-                            parameters.add(new Parameter(v[0], URLDecoder.decode(v[1], "ISO-8859-1")));
-                            encoding = "ISO-8859-1";
-                        } catch (IllegalArgumentException no_perro) {
-                            parameters.add(new Parameter(v[0], v[1]));
-                        }
-                    }
-                } catch (UnsupportedEncodingException e) {
-                    throw new RuntimeException(e);
-                }
-            }
+    /**
+     * Decodes the parameters from the query when first needed.
+     */
+    private void decodeParameters() {
+        if ((lazy & PARAMETERS) != 0) {
+            parameters = decode(getRawQuery());
+            lazy &= ~PARAMETERS;
         }
+    }
 
-        this.parameters = parameters;
+    /**
+     * Decodes the parameters from the query ahead of a modification, after
+     * which the query is serialized from the parameters.
+     */
+    private void modifyParameters() {
+        decodeParameters();
+        if (parameters != null) {
+            Parameters unshared = parameters.unshare();
+            if (unshared != parameters) {
+                parameters = unshared;
+                lazy &= ~EXPOSED;
+            }
+        }
+        query = null;
+        lazy &= ~RAW_QUERY;
     }
 
-    public String getQuery() {
-        if (parameters == null)
+    private Parameters decode(String query) {
+        if (query == null) {
             return null;
+        }
 
-        StringBuilder sb = new StringBuilder();
+        Parameters parameters = new Parameters();
 
-        for (Parameter p : parameters) {
-            if (sb.length() != 0) {
-                sb.append(querySeparator);
+        if (query.equals("")) {
+            return parameters;
+        }
+
+        QueryDecoder decoder = QueryDecoder.forEncoding(encoding);
+        int separator = querySeparator.length();
+        int length = query.length();
+        while (0 < length && separator != 0 && query.endsWith(querySeparator)) {
+            length -= separator; // trailing empty parameters are dropped
+            query = query.substring(0, length);
+        }
+        int start = 0;
+        while (start < length) {
+            int end = separator == 0 ? -1 : query.indexOf(querySeparator, start);
+            if (end < 0) {
+                end = length;
+            }
+            int equals = query.indexOf('=', start);
+            if (equals < 0 || end <= equals) {
+                parameters.add(name(query, start, end), null);
+            } else {
+                parameters.add(name(query, start, equals), decoder.decode(query, equals + 1, end));
             }
-            sb.append(p.toString());
+            start = end + separator;
+        }
+        if (decoder.isDetecting() && decoder.getCharset() == decoder.getFallback()) {
+            encoding = decoder.getFallback().name();
         }
 
-        return sb.toString();
+        return parameters;
     }
 
     private static String resolveDotDot(String path) {
@@ -431,17 +668,28 @@ public class Url {
         return path;
     }
 
+    /**
+     * Resolves a reference relative to the URL, mimicking web browsers. For
+     * resolving many references against the same URL as specified in RFC 3986,
+     * see {@link Resolver}.
+     *
+     * @param str
+     *            the reference
+     * @return the resolved URL, or this URL for an empty reference
+     * @throws MalformedUriException
+     *             when the resolved URL is malformed
+     */
     public Url resolve(String str) throws MalformedUriException {
     	if ("".equals(str)) {
     		return this;
     	}
 
-    	if (schemeValidationPattern.matcher(str).find()) {
+    	if (-1 < UrlLexer.scheme(str, 0, str.length())) {
             return new Url(str, encoding, querySeparator);
         }
 
         if (str.startsWith("//")) {
-            return new Url(scheme + ":" + str, encoding, querySeparator);
+            return new Url(getScheme() + ":" + str, encoding, querySeparator);
         }
 
         Url u = new Url(this);
@@ -475,7 +723,8 @@ public class Url {
 
     public URI toURI() {
         try {
-            return new URI(scheme, userInfo, host.toString(), (port == null ? -1 : port), path, getQuery(), fragment);
+            Integer port = getPort();
+            return new URI(getScheme(), getUserInfo(), getHost().toString(), (port == null ? -1 : port), getPath(), getQuery(), getFragment());
         } catch (URISyntaxException e) {
             return null;
         }
@@ -484,6 +733,7 @@ public class Url {
     public String getLocalPath() {
         StringBuilder sb = new StringBuilder();
 
+        String path = getPath();
         if (path != null)
             sb.append(path);
         String query = getQuery();
@@ -491,6 +741,7 @@ public class Url {
             sb.append('?');
             sb.append(query);
         }
+        String fragment = getFragment();
         if (fragment != null) {
             sb.append('#');
             sb.append(fragment);
@@ -499,46 +750,62 @@ public class Url {
         return sb.toString();
     }
 
-    // XXX replace with getservbyname()... https://github.com/wmeissner/jnr-netdb ?
-    private static HashMap<Integer, String> schemePorts = new HashMap<Integer, String>();
-    static {
-        schemePorts.put(21, "ftp");
-        schemePorts.put(80, "http");
-        schemePorts.put(443, "https");
-    }
-
+    /**
+     * Provides a copy of the URL with canonical components, as by a
+     * {@link Canonicalizer} with the default flags. The canonicalizer is kept
+     * per thread, but code canonicalizing many URLs should rather reuse a
+     * {@link Canonicalizer} of its own, which also allows for other flags.
+     *
+     * @return the normalized copy
+     */
     public Url normalize() {
-        Url url = new Url(this);
-        try {
-            url.setScheme(getScheme().toLowerCase());
-            try {
-                url.setHost(getHost().toString().toLowerCase());
-            } catch (MalformedDomainException e) {
-                // Highly unlikely
-                throw new RuntimeException(e);
-            }
-            String portScheme;
-            if (url.getPort() != null && (portScheme = schemePorts.get(url.getPort())) != null && portScheme.equals(getScheme())) {
-                url.setPort(null);
-            }
-        } catch (URISyntaxException e) {
-        }
-
-        // XXX rencode path, qparam
-
-        return url;
+        return canonicalizers.get().normalize(this);
+    }
+
+    /**
+     * Provides a 64-bit fingerprint of the URL, as by
+     * {@link Canonicalizer#fingerprint(Url)} with the default flags, see
+     * {@link #normalize()}.
+     *
+     * @return the fingerprint
+     */
+    public long fingerprint() {
+        return canonicalizers.get().fingerprint(this);
+    }
+
+    /**
+     * Provides a 128-bit fingerprint of the URL, as by
+     * {@link Canonicalizer#fingerprint(Url, long[])} with the default flags,
+     * see {@link #normalize()}.
+     *
+     * @return the high and low 64 bits of the fingerprint
+     */
+    public long[] fingerprint128() {
+        return canonicalizers.get().fingerprint(this, new long[2]);
+    }
+
+    /**
+     * Provides a fingerprint of the URL prefixed by a fingerprint of its site,
+     * as by {@link Canonicalizer#siteFingerprint(Url, long[])} with the
+     * default flags, see {@link #normalize()}.
+     *
+     * @return the 64-bit fingerprints of the site and the URL
+     */
+    public long[] siteFingerprint() {
+        return canonicalizers.get().siteFingerprint(this, new long[2]);
     }
 
     @Override
     public String toString() {
         StringBuilder sb = new StringBuilder();
 
-        String host = this.host.toString();
+        String host = getHost().toString();
 
-        sb.append(scheme);
+        sb.append(getScheme());
         sb.append("://");
 
         if (host != null) {
+            String userInfo = getUserInfo();
             if (userInfo != null) {
                 sb.append(userInfo);
                 sb.append('@');
@@ -553,11 +820,13 @@ public class Url {
             if (needBrackets) {
                 sb.append(']');
             }
+            Integer port = getPort();
             if (port != null) {
                 sb.append(':');
                 sb.append(port);
             }
         }
+        String path = getPath();
         if (path != null)
             sb.append(path);
         String query = getQuery();
@@ -565,6 +834,7 @@ public class Url {
             sb.append('?');
             sb.append(query);
         }
+        String fragment = getFragment();
         if (fragment != null) {
             sb.append('#');
             sb.append(fragment);
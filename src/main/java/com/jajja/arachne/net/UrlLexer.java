@@ -0,0 +1,252 @@
+/*
+ * Copyright (C) 2013 Jajja Communications AB
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.jajja.arachne.net;
+
+import com.jajja.arachne.exceptions.Reason;
+
+/**
+ * A single pass scanner of URLs, recording the boundaries of the components as
+ * offsets into the URL rather than splitting it, such that components can be
+ * sliced from the URL when first asked for.
+ *
+ * A URL is split as <tt>scheme:[//][userinfo@]host[:port][path][?query][#fragment]</tt>,
+ * where the host and port, the endpoint, are left out if the part after the
+ * scheme starts with a slash, as in <tt>file:///path</tt>. The fragment starts
+ * at the first <tt>#</tt> and the query at the first <tt>?</tt> before it.
+ *
+ * @author Martin Korinth <martin.korinth@jajja.com>
+ */
+final class UrlLexer {
+
+    /** The offset of the colon terminating the scheme. */
+    static final int SCHEME_END = 0;
+    /** The offset of the endpoint, after any user info, or -1 if no endpoint. */
+    static final int ENDPOINT_START = 1;
+    /** The offset of the user info, or -1 if no user info. */
+    static final int USER_INFO_START = 2;
+    /** The offset of the host, without any brackets. */
+    static final int HOST_START = 3;
+    /** The offset after the host, without any brackets. */
+    static final int HOST_END = 4;
+    /** The port number, or -1 if no port. */
+    static final int PORT = 5;
+    /** The offset of the path, which is also the end of the endpoint. */
+    static final int PATH_START = 6;
+    /** The offset after the path. */
+    static final int PATH_END = 7;
+    /** The offset of the query, after the question mark, or -1 if no query. */
+    static final int QUERY_START = 8;
+    /** The offset of the fragment, after the hash, or -1 if no fragment. */
+    static final int FRAGMENT_START = 9;
+    /** The offset after the URL. */
+    static final int END = 10;
+    /** The error code of {@link DomainLexer} for an invalid host. */
+    static final int HOST_ERROR = 11;
+
+    /** The size of an offset array. */
+    static final int OFFSETS = 12;
+
+    private UrlLexer() {
+    }
+
+    /**
+     * Tells whether a range of characters starts with a scheme followed by a
+     * colon, i.e. a letter followed by letters, digits, <tt>*</tt>, <tt>.</tt>
+     * or <tt>-</tt>.
+     *
+     * @param string
+     *            the characters
+     * @param start
+     *            the start of the range
+     * @param end
+     *            the end of the range, exclusive
+     * @return the offset of the colon, or -1 if there is no scheme
+     */
+    static int scheme(CharSequence string, int start, int end) {
+        if (start == end || !isLetter(string.charAt(start))) {
+            return -1;
+        }
+        for (int i = start + 1; i < end; i++) {
+            char c = string.charAt(i);
+            if (c == ':') {
+                return i;
+            }
+            if (!(isLetter(c) || (c >= '0' && c <= '9') || c == '*' || c == '.' || c == '-')) {
+                return -1;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Scans a URL and records the offsets of its components.
+     *
+     * @param string
+     *            the URL
+     * @param offsets
+     *            the array to record offsets in, of size {@link #OFFSETS}
+     * @return null for a valid URL, or the reason the URL is malformed
+     */
+    static Reason lex(CharSequence string, int[] offsets) {
+        int end = string.length();
+        int colon = scheme(string, 0, end);
+        if (colon < 0) {
+            return Reason.INVALID_SCHEME;
+        }
+        offsets[SCHEME_END] = colon;
+        offsets[END] = end;
+        offsets[QUERY_START] = -1;
+        offsets[FRAGMENT_START] = -1;
+        int stop = end;
+        for (int i = colon + 1; i < end; i++) {
+            char c = string.charAt(i);
+            if (c == '#') {
+                offsets[FRAGMENT_START] = i + 1;
+                stop = i;
+                break;
+            } else if (c == '?' && offsets[QUERY_START] < 0) {
+                offsets[QUERY_START] = i + 1;
+            }
+        }
+        if (-1 < offsets[QUERY_START]) {
+            stop = offsets[QUERY_START] - 1;
+        }
+        offsets[PATH_END] = stop;
+        int start = colon + 1;
+        if (start + 1 < stop && string.charAt(start) == '/' && string.charAt(start + 1) == '/') {
+            start += 2;
+        }
+        if (start == stop) {
+            return Reason.MISSING_HOST_OR_PATH;
+        }
+        offsets[USER_INFO_START] = -1;
+        offsets[ENDPOINT_START] = -1;
+        offsets[HOST_START] = -1;
+        offsets[HOST_END] = -1;
+        offsets[PORT] = -1;
+        if (string.charAt(start) == '/') {
+            offsets[PATH_START] = start; // file:///
+            return null;
+        }
+        int slash = stop;
+        int at = -1;
+        for (int i = start; i < stop; i++) {
+            char c = string.charAt(i);
+            if (c == '/') {
+                slash = i;
+                break;
+            } else if (c == '@' && at < 0) {
+                at = i;
+            }
+        }
+        offsets[PATH_START] = slash;
+        if (-1 < at) {
+            offsets[USER_INFO_START] = start;
+            start = at + 1;
+        }
+        offsets[ENDPOINT_START] = start;
+        return lexEndpoint(string, start, slash, offsets);
+    }
+
+    /**
+     * Scans an endpoint, a host optionally followed by a colon and a port,
+     * where an IPv6 host is enclosed in brackets, and records the offsets of
+     * the host and the port number, or the error code of an invalid host.
+     *
+     * @param string
+     *            the characters containing the endpoint
+     * @param start
+     *            the start of the endpoint
+     * @param end
+     *            the end of the endpoint, exclusive
+     * @param offsets
+     *            the array to record offsets in, of size {@link #OFFSETS}
+     * @return null for a valid endpoint, or the reason the endpoint is
+     *         malformed
+     */
+    static Reason lexEndpoint(CharSequence string, int start, int end, int[] offsets) {
+        int colon = -1;
+        for (int i = end - 1; start <= i; i--) {
+            if (string.charAt(i) == ':') {
+                colon = i;
+                break;
+            }
+        }
+        int hostStart = start;
+        int hostEnd = -1 < colon ? colon : end;
+        if (start < end && string.charAt(start) == '[') {
+            int bracket = -1;
+            for (int i = start + 1; i < end; i++) {
+                if (string.charAt(i) == ']') {
+                    bracket = i;
+                    break;
+                }
+            }
+            if (bracket < 0)
+                return Reason.UNMATCHED_BRACKET;
+            if (bracket + 1 == end)
+                colon = -1;
+            else if (bracket != colon - 1)
+                return Reason.EXPECTED_COLON;
+            hostStart = start + 1;
+            hostEnd = bracket;
+            if (Host.classify(string, hostStart, hostEnd) != Host.Type.IPV6)
+                return Reason.BRACKETED_NON_IPV6;
+        }
+        offsets[HOST_START] = hostStart;
+        offsets[HOST_END] = hostEnd;
+        if (hostStart == start) {
+            int error = Host.validate(string, hostStart, hostEnd);
+            if (error < 0) {
+                offsets[HOST_ERROR] = error;
+                return Reason.INVALID_HOST;
+            }
+        }
+        offsets[PORT] = -1;
+        if (-1 < colon) {
+            int i = colon + 1;
+            boolean isNegative = i < end && string.charAt(i) == '-';
+            if (isNegative || (i < end && string.charAt(i) == '+'))
+                i++;
+            if (i == end)
+                return Reason.INVALID_PORT;
+            long port = 0;
+            for (; i < end; i++) {
+                char c = string.charAt(i);
+                if (c < '0' || '9' < c)
+                    return Reason.INVALID_PORT;
+                port = port * 10 + (c - '0');
+                if ((isNegative ? 0x80000000L : 0x7fffffffL) < port)
+                    return Reason.INVALID_PORT; // as by Integer.parseInt
+            }
+            if (isNegative || port < 1 || 65535 < port)
+                return Reason.PORT_OUT_OF_RANGE;
+            offsets[PORT] = (int) port;
+        }
+        return null;
+    }
+
+    private static boolean isLetter(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+    }
+
+}
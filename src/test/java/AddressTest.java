@@ -3,6 +3,7 @@ import org.junit.Test;
 
 import com.jajja.arachne.exceptions.MalformedAddressException;
 import com.jajja.arachne.net.Address;
+import com.jajja.arachne.net.Host;
 
 public class AddressTest {
 
@@ -63,4 +64,71 @@ public class AddressTest {
         }
     }
 
+    @Test public void numeric() { // Numeric forms
+        try {
+            Address ipv4 = new Address("213.66.58.72");
+            Assert.assertEquals(0xd5423a48, ipv4.toInt());
+            Assert.assertEquals("d5423a48", ipv4.getHex());
+            Assert.assertEquals(ipv4, Address.valueOf(0xd5423a48));
+            Assert.assertEquals(ipv4, Address.valueOf(ipv4.getBytes()));
+            Address ipv6 = new Address("2605:2700:0:3::4713:93e3");
+            Assert.assertEquals(0x2605270000000003L, ipv6.getHigh());
+            Assert.assertEquals(0x00000000471393e3L, ipv6.getLow());
+            Assert.assertEquals("260527000000000300000000471393e3", ipv6.getHex());
+            Assert.assertEquals(ipv6, Address.valueOf(ipv6.getBytes()));
+            Assert.assertEquals("2605:2700:0:3::4713:93e3", Address.valueOf(ipv6.getHigh(), ipv6.getLow()).toString());
+            Assert.assertEquals(1L, new Address("::1").getLow());
+            Assert.assertEquals(0xfe80000000000000L, new Address("fe80::").getHigh());
+            Assert.assertTrue(ipv4.compareTo(ipv6) < 0);
+            Assert.assertTrue(new Address("::1").compareTo(new Address("fe80::1")) < 0);
+        } catch (MalformedAddressException e) {
+            Assert.fail(e.getMessage());
+        }
+    }
+
+    @Test public void incompleteAddresses() { // Too few or too many parts
+        for (String name : new String[] { "127.0.0", "127.0.0.1.", "1:2:3:4:5:6:7", "1:2:3:4:5:6:7:8:9", "1::2:3:4:5:6:7:8", "12345::1", "fe80:" }) {
+            try {
+                new Address(name);
+                Assert.fail(name);
+            } catch (MalformedAddressException e) {
+                System.out.println("Incomplete address (" + e.getAddress() + "): " + e.getMessage());
+            }
+        }
+    }
+
+    @Test public void classify() { // Host names told apart without exceptions
+        Assert.assertEquals(Host.Type.IPV4, Host.classify("127.0.0.1"));
+        Assert.assertEquals(Host.Type.IPV6, Host.classify("fe80::1%lo0"));
+        Assert.assertEquals(Host.Type.DOMAIN, Host.classify("www.example.com"));
+        Assert.assertEquals(Host.Type.DOMAIN, Host.classify("0.0.0.1"));
+        Assert.assertEquals(Host.Type.DOMAIN, Host.classify("r\u00e4ksm\u00f6rg\u00e5s.se"));
+        Assert.assertEquals(Host.Type.INVALID, Host.classify("127.0.0.1:80"));
+        Assert.assertEquals(Host.Type.INVALID, Host.classify(""));
+        Assert.assertTrue(Address.isAddress("::1"));
+        Assert.assertFalse(Address.isAddress("localhost"));
+        Assert.assertFalse(Address.isIpv6("127.0.0.1"));
+    }
+
+    @Test public void canonical() { // RFC 4291 forms in, RFC 5952 form out
+        try {
+            Assert.assertEquals("2001:db8::1", new Address("2001:DB8:0:0:0:0:0:1").getCanonical());
+            Assert.assertEquals("2001:db8::1:0:0:1", new Address("2001:0db8:0000:0000:0001:0000:0000:0001").getCanonical());
+            Assert.assertEquals("2001:db8:0:1:1:1:1:1", new Address("2001:db8:0:1:1:1:1:1").getCanonical());
+            Assert.assertEquals("::ffff:192.0.2.1", new Address("::FFFF:192.0.2.1").getCanonical());
+            Assert.assertEquals("00000000000000000000ffffc0000201", new Address("::ffff:c000:201").getHex());
+            Assert.assertEquals("::c000:201", new Address("::192.0.2.1").getCanonical());
+            Assert.assertEquals("1:2:3:4:5:6:102:304", new Address("1:2:3:4:5:6:1.2.3.4").getCanonical());
+            Assert.assertEquals("fe80::1%eth0.5", new Address("fe80:0::1%eth0.5").getCanonical());
+            Assert.assertEquals("::", new Address("::").getCanonical());
+            Assert.assertEquals("127.0.0.1", new Address("127.0.0.1").getCanonical());
+            Assert.assertTrue(Address.isIpv6("::ffff:192.0.2.1"));
+            Assert.assertFalse(Address.isIpv6("1:2:3:4:5:6:7:1.2.3.4"));
+            Assert.assertFalse(Address.isIpv6("::1.2.3.4:5"));
+            Assert.assertFalse(Address.isIpv6("::256.0.0.1"));
+        } catch (MalformedAddressException e) {
+            Assert.fail(e.getMessage());
+        }
+    }
+
 }
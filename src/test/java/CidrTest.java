@@ -0,0 +1,113 @@
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.jajja.arachne.exceptions.MalformedAddressException;
+import com.jajja.arachne.net.Address;
+import com.jajja.arachne.net.Cidr;
+import com.jajja.arachne.net.CidrTrie;
+
+public class CidrTest {
+
+    @Test public void ranges() { // Parsing and containment of ranges
+        try {
+            Cidr cidr = new Cidr("10.1.2.3/8");
+            Assert.assertEquals("10.0.0.0/8", cidr.toString());
+            Assert.assertTrue(cidr.contains(new Address("10.255.0.1")));
+            Assert.assertFalse(cidr.contains(new Address("11.0.0.1")));
+            Assert.assertFalse(cidr.contains(new Address("::1")));
+            Assert.assertTrue(new Cidr("0.0.0.0/0").contains(new Address("213.66.58.72")));
+            Assert.assertEquals("2001:db8::/32", new Cidr("2001:db8:1::1/32").toString());
+            Assert.assertTrue(new Cidr("2001:db8::/32").contains(new Address("2001:db8:ffff::1")));
+            Assert.assertEquals(128, new Cidr("::1").getPrefix());
+            Assert.assertEquals(new Cidr("192.168.0.0/16"), Cidr.valueOf(new Address("192.168.1.1"), 16));
+        } catch (MalformedAddressException e) {
+            Assert.fail(e.getMessage());
+        }
+        for (String name : new String[] { "10.0.0.0/33", "10.0.0.0/", "10.0.0.0/a", "::/129", "foo/8" }) {
+            try {
+                new Cidr(name);
+                Assert.fail(name);
+            } catch (MalformedAddressException e) {
+                System.out.println("Malformed range (" + e.getAddress() + "): " + e.getMessage());
+            }
+        }
+    }
+
+    @Test public void longestPrefix() { // Most specific range wins
+        try {
+            Map<Cidr, String> ranges = new HashMap<Cidr, String>();
+            ranges.put(new Cidr("0.0.0.0/0"), "any");
+            ranges.put(new Cidr("10.0.0.0/8"), "internal");
+            ranges.put(new Cidr("10.1.0.0/16"), "office");
+            ranges.put(new Cidr("10.1.2.3"), "printer");
+            ranges.put(new Cidr("2001:db8::/32"), "documentation");
+            ranges.put(new Cidr("2001:db8:1::/48"), "lab");
+            CidrTrie<String> trie = CidrTrie.build(ranges);
+            Assert.assertEquals(6, trie.size());
+            Assert.assertEquals("any", trie.get(new Address("213.66.58.72")));
+            Assert.assertEquals("internal", trie.get(new Address("10.2.0.1")));
+            Assert.assertEquals("office", trie.get(new Address("10.1.2.4")));
+            Assert.assertEquals("printer", trie.get(new Address("10.1.2.3")));
+            Assert.assertEquals("printer", trie.get(new Address("10.1.2.3").toInt()));
+            Assert.assertEquals("lab", trie.get(new Address("2001:db8:1::1")));
+            Assert.assertEquals("documentation", trie.get(new Address("2001:db8:2::1")));
+            Assert.assertNull(trie.get(new Address("::1")));
+            Assert.assertEquals(new Cidr("10.1.0.0/16"), trie.match(new Address("10.1.200.1")));
+        } catch (MalformedAddressException e) {
+            Assert.fail(e.getMessage());
+        }
+    }
+
+    @Test public void random() { // Lookups agree with a linear scan of the ranges
+        Random random = new Random(4711);
+        Map<Cidr, Integer> ranges = new HashMap<Cidr, Integer>();
+        for (int i = 0; i < 2000; i++) {
+            int prefix = random.nextInt(33);
+            ranges.put(Cidr.valueOf(Address.valueOf(random.nextInt() & 0xff0fffff), prefix), i);
+            ranges.put(Cidr.valueOf(Address.valueOf(random.nextLong() & 0xffff0fffffffffffL, random.nextLong()), 4 * prefix), i);
+        }
+        CidrTrie<Integer> trie = CidrTrie.build(ranges);
+        for (int i = 0; i < 4000; i++) {
+            Address address = i % 2 == 0 ? Address.valueOf(random.nextInt() & 0xff0fffff) : Address.valueOf(random.nextLong() & 0xffff0fffffffffffL, random.nextLong());
+            Cidr best = null;
+            for (Cidr cidr : ranges.keySet()) {
+                if (cidr.contains(address) && (best == null || best.getPrefix() < cidr.getPrefix())) {
+                    best = cidr;
+                }
+            }
+            Assert.assertEquals(address.toString(), best, trie.match(address));
+            Assert.assertEquals(address.toString(), best == null ? null : ranges.get(best), trie.get(address));
+        }
+    }
+
+    @Test public void load() { // Loading ranges from a text file
+        try {
+            File file = File.createTempFile("arachne", ".txt");
+            file.deleteOnExit();
+            Writer writer = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+            writer.write("# internal networks\n\n10.0.0.0/8\tinternal\nfc00::/7  unique local\n192.0.2.1\n");
+            writer.close();
+            CidrTrie<String> trie = CidrTrie.load(file);
+            Assert.assertEquals(3, trie.size());
+            Assert.assertEquals("internal", trie.get(new Address("10.0.0.1")));
+            Assert.assertEquals("unique local", trie.get(new Address("fd00::1")));
+            Assert.assertTrue(trie.contains(new Address("192.0.2.1")));
+            Assert.assertNull(trie.get(new Address("192.0.2.1")));
+            Assert.assertFalse(trie.contains(new Address("192.0.2.2")));
+        } catch (IOException e) {
+            Assert.fail(e.getMessage());
+        } catch (MalformedAddressException e) {
+            Assert.fail(e.getMessage());
+        }
+    }
+
+}
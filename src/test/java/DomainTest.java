@@ -1,9 +1,15 @@
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+
 import org.junit.Assert;
 import org.junit.Test;
 
 import com.jajja.arachne.exceptions.MalformedDomainException;
 import com.jajja.arachne.net.Domain;
+import com.jajja.arachne.net.DomainBatch;
 import com.jajja.arachne.net.Record;
+import com.jajja.arachne.net.SuffixList;
 
 public class DomainTest {
 
@@ -101,6 +107,59 @@ public class DomainTest {
         checkPublicSuffix("www.test.k12.ak.us", "test.k12.ak.us");
     }
 
+    @Test public void reload() { // Reloaded rules.
+        try {
+            Assert.assertTrue(SuffixList.reload(new File("src/main/resources/suffix")));
+        } catch (IOException e) {
+            Assert.fail(e.getMessage());
+        }
+        checkPublicSuffix("b.c.cy", "b.c.cy");
+        checkPublicSuffix("www.city.kobe.jp", "city.kobe.jp");
+        try {
+            SuffixList.reload(new File("src/main/resources/missing"));
+            Assert.fail();
+        } catch (IOException e) {
+            checkPublicSuffix("a.b.example.com", "example.com");
+        }
+    }
+
+    @Test public void records() { // Records compared without building strings.
+        try {
+            Record record = new Domain("www.Example.co.uk").getRegisteredRecord();
+            Record other = new Domain("mail.example.co.uk.").getRegisteredRecord();
+            Assert.assertEquals(record, other);
+            Assert.assertEquals("example.co.uk".hashCode(), record.hashCode());
+            Assert.assertTrue(record.isEntry("example.co.uk"));
+            Assert.assertFalse(record.equals(new Domain("example.ac.uk").getRegisteredRecord()));
+            Assert.assertEquals("co.uk", other.getSuffix());
+        } catch (MalformedDomainException e) {
+            Assert.fail(e.getMessage());
+        }
+    }
+
+    @Test public void batch() { // Batch of names matched in parallel.
+        String[] names = new String[5000];
+        for (int i = 0; i < names.length; i++) {
+            names[i] = i % 5 == 0 ? "bad_" + i + ".com" : "www.test" + i + (i % 2 == 0 ? ".co.uk" : ".k12.ak.us");
+        }
+        try {
+            DomainBatch batch = DomainBatch.match(Arrays.asList(names));
+            Assert.assertEquals(names.length, batch.size());
+            for (int i = 0; i < names.length; i++) {
+                if (i % 5 == 0) {
+                    Assert.assertTrue(batch.isMalformed(i));
+                    Assert.assertNull(batch.getRegistered(i));
+                } else {
+                    String suffix = i % 2 == 0 ? "co.uk" : "k12.ak.us";
+                    Assert.assertEquals("test" + i + "." + suffix, batch.getRegistered(i));
+                    Assert.assertEquals(suffix, batch.getSuffix(i));
+                }
+            }
+        } catch (InterruptedException e) {
+            Assert.fail(e.getMessage());
+        }
+    }
+
     static void checkPublicSuffix(String name, String entry) {
         boolean isPassed = false;
         try {
@@ -0,0 +1,40 @@
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.jajja.arachne.exceptions.MalformedUriException;
+import com.jajja.arachne.net.Fingerprint;
+import com.jajja.arachne.net.Url;
+
+public class FingerprintTest {
+
+    @Test public void murmur3() { // Reference MurmurHash3_x64_128 values
+        Fingerprint fingerprint = new Fingerprint();
+        Assert.assertArrayEquals(new long[] { 0L, 0L }, fingerprint.get(new long[2]));
+        Assert.assertArrayEquals(new long[] { 0x5b1e906a48ae1d19L, 0xcbd8a7b341bd9b02L }, fingerprint.append("hello").get(new long[2]));
+        fingerprint.reset().append("The quick brown fox ").append("jumps over the lazy dog");
+        Assert.assertEquals(0x7a433ca9c49a9347L, fingerprint.getHigh());
+        Assert.assertEquals(0xe34bbc7bbc071b6cL, fingerprint.getLow());
+        fingerprint.reset();
+        for (char c : "hello".toCharArray()) {
+            fingerprint.update(c);
+        }
+        Assert.assertEquals(0xcbd8a7b341bd9b02L, fingerprint.getLow());
+    }
+
+    @Test public void urls() { // Equivalent URLs share fingerprints
+        try {
+            Url url = new Url("HTTP://WWW.Example.com:80/%7ea/./b");
+            Assert.assertEquals(new Fingerprint().append("http://www.example.com/~a/b").getLow(), url.fingerprint());
+            Assert.assertArrayEquals(new Url("http://www.example.com/~a/b").fingerprint128(), url.fingerprint128());
+            Assert.assertFalse(url.fingerprint() == new Url("http://www.example.com/~a/c").fingerprint());
+            long[] site = new Url("http://a.example.com/x").siteFingerprint();
+            Assert.assertEquals(new Fingerprint().append("example.com").getLow(), site[0]);
+            Assert.assertEquals(site[0], url.siteFingerprint()[0]);
+            Assert.assertEquals(url.fingerprint(), url.siteFingerprint()[1]);
+            Assert.assertEquals(new Fingerprint().append("127.0.0.1").getLow(), new Url("http://127.0.0.1/").siteFingerprint()[0]);
+        } catch (MalformedUriException e) {
+            Assert.fail(e.getMessage());
+        }
+    }
+
+}
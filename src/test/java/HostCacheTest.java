@@ -0,0 +1,117 @@
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.jajja.arachne.exceptions.MalformedDomainException;
+import com.jajja.arachne.net.Address;
+import com.jajja.arachne.net.Domain;
+import com.jajja.arachne.net.Host;
+import com.jajja.arachne.net.HostCache;
+import com.jajja.arachne.net.SuffixList;
+
+public class HostCacheTest {
+
+    @Test public void hits() { // Repeated lookups.
+        try {
+            HostCache cache = new HostCache(100, 1);
+            Host host = cache.get("www.example.com");
+            Assert.assertSame(host, cache.get("www.example.com"));
+            Assert.assertSame(host, cache.getDomain("www.example.com"));
+            Assert.assertTrue(cache.get("127.0.0.1") instanceof Address);
+            Assert.assertEquals(2, cache.getHits());
+            Assert.assertEquals(2, cache.getMisses());
+            Assert.assertEquals(2, cache.size());
+        } catch (MalformedDomainException e) {
+            Assert.fail(e.getMessage());
+        }
+    }
+
+    @Test public void scan() { // Scan of unique hosts does not evict frequent hosts.
+        try {
+            HostCache cache = new HostCache(10, 1);
+            Host host = cache.get("www.example.com");
+            cache.get("www.example.com");
+            for (int i = 0; i < 1000; i++) {
+                cache.get("host" + i + ".example.com");
+            }
+            Assert.assertSame(host, cache.get("www.example.com"));
+            Assert.assertEquals(10, cache.size());
+            Assert.assertEquals(991, cache.getEvictions());
+        } catch (MalformedDomainException e) {
+            Assert.fail(e.getMessage());
+        }
+    }
+
+    @Test public void small() { // Small capacities still cache new hosts.
+        try {
+            HostCache cache = new HostCache(1);
+            cache.get("www.example.com");
+            cache.get("www.example.com");
+            Host host = cache.get("www.example.org");
+            Assert.assertSame(host, cache.get("www.example.org"));
+            Assert.assertEquals(1, cache.size());
+            cache = new HostCache(10);
+            for (int i = 0; i < 10; i++) {
+                cache.get("host" + i + ".example.com");
+            }
+            Assert.assertEquals(10, cache.size());
+            Assert.assertEquals(0, cache.getEvictions());
+            cache = new HostCache(20, 16);
+            for (int i = 0; i < 1000; i++) {
+                cache.get("host" + i + ".example.com");
+            }
+            Assert.assertTrue(cache.size() <= 20);
+        } catch (MalformedDomainException e) {
+            Assert.fail(e.getMessage());
+        }
+    }
+
+    @Test public void installed() { // Installed cache.
+        try {
+            Host.setCache(new HostCache(10));
+            Assert.assertSame(Host.get("www.example.com"), Domain.get("www.example.com"));
+            Assert.assertEquals(1, Host.getCache().getHits());
+        } catch (MalformedDomainException e) {
+            Assert.fail(e.getMessage());
+        } finally {
+            Host.setCache(null);
+        }
+    }
+
+    @Test public void reload() { // Cached domains follow reloaded rules.
+        File directory = new File(System.getProperty("java.io.tmpdir"), "arachne-suffix-" + System.nanoTime());
+        try {
+            Host.setCache(new HostCache(10));
+            Domain domain = Domain.get("www.example.co.uk");
+            Assert.assertEquals("example.co.uk", domain.getRegistered());
+            Assert.assertTrue(directory.mkdir());
+            for (String file : new String[] { "icann_effective_tld_names.dat", "icann_patch_tld_names.dat", "private_effective_tld_names.dat", "private_patch_tld_names.dat" }) {
+                Writer writer = new FileWriter(new File(directory, file));
+                writer.write(file.startsWith("icann_effective") ? "uk\n" : "");
+                writer.close();
+            }
+            Assert.assertTrue(SuffixList.reload(directory));
+            Assert.assertSame(domain, Domain.get("www.example.co.uk"));
+            Assert.assertEquals("co.uk", domain.getRegistered());
+        } catch (IOException e) {
+            Assert.fail(e.getMessage());
+        } catch (MalformedDomainException e) {
+            Assert.fail(e.getMessage());
+        } finally {
+            Host.setCache(null);
+            SuffixList.reload();
+            File[] files = directory.listFiles();
+            if (files != null) {
+                for (File file : files) {
+                    file.delete();
+                }
+            }
+            directory.delete();
+        }
+    }
+
+}
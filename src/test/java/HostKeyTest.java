@@ -0,0 +1,73 @@
+import java.util.Arrays;
+import java.util.Comparator;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.jajja.arachne.exceptions.MalformedDomainException;
+import com.jajja.arachne.net.Domain;
+import com.jajja.arachne.net.Host;
+import com.jajja.arachne.net.HostKey;
+
+public class HostKeyTest {
+
+    @Test public void roundTrip() { // Keys decode to equal hosts
+        try {
+            for (String name : new String[] { "127.0.0.1", "213.66.58.72", "::1", "2605:2700:0:3::4713:93e3", "www.example.com", "localhost", "www.example.co.uk" }) {
+                Host host = Host.get(name);
+                byte[] key = HostKey.encode(host);
+                Assert.assertEquals(HostKey.length(host), key.length);
+                Assert.assertEquals(name, HostKey.decode(key).toString());
+            }
+            Assert.assertEquals(5, HostKey.encode(Host.get("127.0.0.1")).length);
+            Assert.assertEquals(17, HostKey.encode(Host.get("::1")).length);
+            Assert.assertArrayEquals("\u0003com\u0000example\u0000www\u0000".getBytes("US-ASCII"), HostKey.encode(Host.get("WWW.Example.com.")));
+        } catch (MalformedDomainException e) {
+            Assert.fail(e.getMessage());
+        } catch (java.io.UnsupportedEncodingException e) {
+            Assert.fail(e.getMessage());
+        }
+    }
+
+    @Test public void order() { // Keys sort by family, number and reversed labels
+        try {
+            String[] names = { "www.example.com", "example.com", "::1", "examples.com", "10.0.0.1", "a.example.com", "9.0.0.1", "example.org" };
+            byte[][] keys = new byte[names.length][];
+            for (int i = 0; i < names.length; i++) {
+                keys[i] = HostKey.encode(Host.get(names[i]));
+            }
+            Arrays.sort(keys, new Comparator<byte[]>() {
+                @Override
+                public int compare(byte[] key, byte[] other) {
+                    return HostKey.compare(key, other);
+                }
+            });
+            String[] sorted = new String[keys.length];
+            for (int i = 0; i < keys.length; i++) {
+                sorted[i] = HostKey.decode(keys[i]).toString();
+            }
+            Assert.assertArrayEquals(new String[] { "9.0.0.1", "10.0.0.1", "::1", "example.com", "a.example.com", "www.example.com", "examples.com", "example.org" }, sorted);
+        } catch (MalformedDomainException e) {
+            Assert.fail(e.getMessage());
+        }
+    }
+
+    @Test public void registeredPrefix() { // Range scans by registered domain
+        try {
+            byte[] prefix = HostKey.getRegisteredPrefix(new Domain("www.foo.co.uk"));
+            Assert.assertArrayEquals(HostKey.encode(new Domain("foo.co.uk")), prefix);
+            byte[] key = HostKey.encode(new Domain("a.b.foo.co.uk"));
+            Assert.assertArrayEquals(prefix, Arrays.copyOf(key, prefix.length));
+            Assert.assertNull(HostKey.getRegisteredPrefix(new Domain("co.uk")));
+        } catch (MalformedDomainException e) {
+            Assert.fail(e.getMessage());
+        }
+        try {
+            HostKey.decode(new byte[] { HostKey.DOMAIN, 'a', 0, 0 });
+            Assert.fail();
+        } catch (IllegalArgumentException e) {
+            System.out.println("Malformed key: " + e.getMessage());
+        }
+    }
+
+}
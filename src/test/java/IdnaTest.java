@@ -0,0 +1,37 @@
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.jajja.arachne.net.Idna;
+
+public class IdnaTest {
+
+    @Test public void ascii() { // ASCII names are kept as is.
+        String name = "www.Example.com";
+        Assert.assertSame(name, Idna.toAscii(name));
+        Assert.assertSame(name, Idna.toUnicode(name));
+    }
+
+    @Test public void punycode() { // RFC 3492 sample strings.
+        checkIdna("\u4ed6\u4eec\u4e3a\u4ec0\u4e48\u4e0d\u8bf4\u4e2d\u6587", "xn--ihqwcrb4cv8a8dqg056pqjye");
+        checkIdna("\u0644\u064a\u0647\u0645\u0627\u0628\u062a\u0643\u0644\u0645\u0648\u0634\u0639\u0631\u0628\u064a\u061f", "xn--egbpdaj6bu4bxfgehfvwxn");
+        checkIdna("3\u5e74b\u7d44\u91d1\u516b\u5148\u751f", "xn--3b-ww4c5e180e575a65lsy2b");
+        checkIdna("b\u00fccher.example", "xn--bcher-kva.example");
+    }
+
+    @Test public void mapping() { // Case folding, separators and ignored code points.
+        Assert.assertEquals("xn--bcher-kva.example", Idna.toAscii("B\u00dcCHER\u3002example"));
+        Assert.assertEquals("example.com", Idna.toAscii("\uff25\uff38\uff21\uff2d\uff30\uff2c\uff25\uff0e\uff43\uff4f\uff4d"));
+        Assert.assertEquals("xn--bcher-kva.com", Idna.toAscii("b\u00fcch\u00ader.com"));
+    }
+
+    @Test public void malformed() { // Undecodable labels are kept.
+        Assert.assertEquals("xn--.com", Idna.toUnicode("xn--.com"));
+        Assert.assertEquals("xn--99999999.com", Idna.toUnicode("xn--99999999.com"));
+    }
+
+    private static void checkIdna(String unicode, String ascii) {
+        Assert.assertEquals(ascii, Idna.toAscii(unicode));
+        Assert.assertEquals(unicode, Idna.toUnicode(ascii));
+    }
+
+}
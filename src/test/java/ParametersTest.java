@@ -0,0 +1,100 @@
+import java.util.ArrayList;
+import java.util.ConcurrentModificationException;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.jajja.arachne.net.Parameter;
+import com.jajja.arachne.net.Parameters;
+
+public class ParametersTest {
+
+    @Test public void multimap() { // Ordered values of repeated names
+        Parameters parameters = new Parameters();
+        parameters.add("a", "1");
+        parameters.add("b", null);
+        parameters.add("a", "2");
+        Assert.assertEquals(3, parameters.size());
+        Assert.assertEquals("1", parameters.get("a"));
+        Assert.assertEquals(1, parameters.indexOf("b"));
+        Assert.assertNull(parameters.get("b"));
+        Assert.assertFalse(parameters.contains("c"));
+        Assert.assertEquals("[1, 2]", parameters.getAll("a").toString());
+        parameters.set("a", "3");
+        Assert.assertEquals("b", parameters.getName(0));
+        Assert.assertEquals("3", parameters.getValue(1));
+        List<Parameter> list = parameters.asList();
+        list.add(0, new Parameter("c", "4"));
+        list.remove(2);
+        Assert.assertEquals(0, parameters.indexOf("c"));
+        Assert.assertEquals(2, parameters.size());
+        Assert.assertEquals(1, parameters.remove("b"));
+        Assert.assertEquals(0, parameters.remove("b"));
+    }
+
+    @Test public void views() { // List entries write through, value views fail fast
+        Parameters parameters = new Parameters();
+        parameters.add("a", "1");
+        parameters.add("b", "2");
+        parameters.add("a", "3");
+        for (Parameter parameter : parameters) {
+            parameter.setValue(parameter.getValue() + "0");
+        }
+        Assert.assertEquals("[10, 30]", parameters.getAll("a").toString());
+        Parameter b = parameters.asList().get(1);
+        parameters.asList().add(0, new Parameter("c", null));
+        b.setName("d");
+        Assert.assertEquals(2, parameters.indexOf("d"));
+        List<String> values = parameters.getAll("a");
+        parameters.remove("a");
+        try {
+            values.get(0);
+            Assert.fail("view of removed parameters");
+        } catch (ConcurrentModificationException e) {
+        }
+        b = parameters.asList().get(1);
+        parameters.remove("d");
+        b.setValue("x");
+        Assert.assertEquals(1, parameters.size());
+        Assert.assertNull(parameters.getValue(0));
+    }
+
+    @Test public void indexed() { // Indexed lookups agree with a list
+        Random random = new Random(4711);
+        Parameters parameters = new Parameters();
+        List<String[]> expected = new ArrayList<String[]>();
+        for (int i = 0; i < 4000; i++) {
+            String name = "p" + random.nextInt(40);
+            switch (random.nextInt(4)) {
+            case 0:
+                parameters.remove(name);
+                for (int j = expected.size() - 1; 0 <= j; j--) {
+                    if (expected.get(j)[0].equals(name)) {
+                        expected.remove(j);
+                    }
+                }
+                break;
+            default:
+                parameters.add(name, Integer.toString(i));
+                expected.add(new String[] { name, Integer.toString(i) });
+            }
+            Assert.assertEquals(expected.size(), parameters.size());
+            name = "p" + random.nextInt(40);
+            List<String> values = new ArrayList<String>();
+            for (String[] parameter : expected) {
+                if (parameter[0].equals(name)) {
+                    values.add(parameter[1]);
+                }
+            }
+            Assert.assertEquals(values, parameters.getAll(name));
+            Assert.assertEquals(values.isEmpty() ? null : values.get(0), parameters.get(name));
+        }
+        Parameters copy = new Parameters(parameters);
+        copy.add("x", "y");
+        Assert.assertFalse(parameters.contains("x"));
+        Assert.assertEquals(parameters.size() + 1, copy.size());
+    }
+
+}
@@ -0,0 +1,91 @@
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.jajja.arachne.exceptions.MalformedDomainException;
+import com.jajja.arachne.exceptions.MalformedException;
+import com.jajja.arachne.exceptions.MalformedUriException;
+import com.jajja.arachne.exceptions.Reason;
+import com.jajja.arachne.net.Address;
+import com.jajja.arachne.net.Domain;
+import com.jajja.arachne.net.Endpoint;
+import com.jajja.arachne.net.ParseResult;
+import com.jajja.arachne.net.Url;
+
+public class ParseTest {
+
+    @Test public void valid() { // Parsing without exceptions
+        ParseResult<Url> url = Url.tryParse("http://www.example.com:8080/path?a=b");
+        Assert.assertTrue(url.isValid());
+        Assert.assertNull(url.getReason());
+        Assert.assertEquals("www.example.com", url.get().getHost().toString());
+        Assert.assertEquals(Integer.valueOf(8080), url.get().getPort());
+        Assert.assertEquals("example.com", Domain.tryParse("www.example.com").get().getRegistered());
+        Assert.assertEquals("7f000001", Address.tryParse("127.0.0.1").get().getHex());
+        Assert.assertEquals("www.example.com", Domain.tryParse("WWW.Example.COM").get().getFqdn());
+        Assert.assertEquals("lo0", Address.tryParse("fe80::1%lo0").get().getComment());
+        Assert.assertEquals("fe800000000000000000000000000001", Address.tryParse("fe80::1%lo0").get().getHex());
+        Assert.assertTrue(Endpoint.tryParse("[::1]:80").get().getHost().isAddress());
+    }
+
+    @Test public void reasons() { // Reasons for malformed input
+        Assert.assertEquals(Reason.INVALID_SCHEME, Url.tryParse("www.example.com").getReason());
+        Assert.assertEquals(Reason.MISSING_HOST_OR_PATH, Url.tryParse("http://").getReason());
+        Assert.assertEquals(Reason.INVALID_HOST, Url.tryParse("http://www..com/").getReason());
+        Assert.assertEquals(Reason.INVALID_PORT, Url.tryParse("http://www.example.com:http/").getReason());
+        Assert.assertEquals(Reason.PORT_OUT_OF_RANGE, Endpoint.tryParse("[::1]:0").getReason());
+        Assert.assertEquals(Reason.UNMATCHED_BRACKET, Endpoint.tryParse("[::1:80").getReason());
+        Assert.assertEquals(Reason.BRACKETED_NON_IPV6, Endpoint.tryParse("[127.0.0.1]:80").getReason());
+        Assert.assertEquals(Reason.LABEL_TOO_LONG, Domain.tryParse("a1234567890123456789012345678901234567890123456789012345678901234.com").getReason());
+        Assert.assertEquals(Reason.EMPTY_DOMAIN, Domain.tryParse("").getReason());
+        Assert.assertEquals(Reason.SUBNET_TOO_LARGE, Address.tryParse("127.0.0.256").getReason());
+        Assert.assertEquals(Reason.MULTIPLE_PADDING, Address.tryParse("1::2::3").getReason());
+        Assert.assertEquals(Reason.NOT_ADDRESS, Address.tryParse("localhost").getReason());
+        Assert.assertSame(Url.tryParse("foo").getReason(), Url.tryParse("bar").getReason());
+    }
+
+    @Test public void exceptions() { // Reasons and messages of exceptions
+        try {
+            new Url("http://www.example.com:99999/");
+            Assert.fail();
+        } catch (MalformedUriException e) {
+            Assert.assertEquals(Reason.PORT_OUT_OF_RANGE, e.getReason());
+            Assert.assertEquals("Port number out of range!", e.getMessage());
+        }
+        try {
+            new Url("http://www..com/");
+            Assert.fail();
+        } catch (MalformedUriException e) {
+            Assert.assertEquals(Reason.INVALID_HOST, e.getReason());
+            Assert.assertEquals(Reason.INVALID_DOMAIN_CHARACTERS, ((MalformedDomainException) e.getCause()).getReason());
+        }
+        try {
+            new Endpoint("www.ex_ample.com:80");
+            Assert.fail();
+        } catch (MalformedUriException e) {
+            Assert.assertEquals(Reason.INVALID_HOST, e.getReason());
+            Assert.assertEquals("www.ex_ample.com", ((MalformedDomainException) e.getCause()).getDomain());
+            Assert.assertEquals(Reason.INVALID_DOMAIN_CHARACTERS, ((MalformedDomainException) e.getCause()).getReason());
+        }
+        try {
+            new Url("http://0123456789012345678901234567890123456789012345678901234567890123.com/");
+            Assert.fail();
+        } catch (MalformedUriException e) {
+            Assert.assertEquals(Reason.LABEL_TOO_LONG, ((MalformedDomainException) e.getCause()).getReason());
+        }
+    }
+
+    @Test public void stackless() { // Exceptions without stack traces
+        boolean stackless = MalformedException.isStackless();
+        try {
+            MalformedException.setStackless(true);
+            new Domain("www..com");
+            Assert.fail();
+        } catch (MalformedDomainException e) {
+            Assert.assertEquals(0, e.getStackTrace().length);
+            Assert.assertEquals("Invalid charcters in domain name!", e.getMessage());
+        } finally {
+            MalformedException.setStackless(stackless);
+        }
+    }
+
+}
@@ -0,0 +1,57 @@
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.jajja.arachne.net.PercentCodec;
+import com.jajja.arachne.net.PercentCodec.Component;
+
+public class PercentCodecTest {
+
+    @Test public void form() { // Form encoding as by URLEncoder
+        try {
+            Random random = new Random(4711);
+            for (int n = 0; n < 2000; n++) {
+                StringBuilder builder = new StringBuilder();
+                for (int i = random.nextInt(40); 0 < i; i--) {
+                    builder.append((char) (random.nextInt(8) == 0 ? random.nextInt(0x10000) : random.nextInt(0x80)));
+                }
+                String string = builder.toString();
+                Assert.assertEquals(URLEncoder.encode(string, "UTF-8"), PercentCodec.encode(string, Component.FORM));
+            }
+            String safe = "abc.-*_123";
+            Assert.assertSame(safe, PercentCodec.encode(safe, Component.FORM));
+            Assert.assertEquals("a+b%26c%3D%F0%9F%98%80", PercentCodec.encode("a b&c=\ud83d\ude00", Component.FORM));
+        } catch (UnsupportedEncodingException e) {
+            Assert.fail(e.getMessage());
+        }
+    }
+
+    @Test public void components() { // Safe characters of each component
+        String string = "a/b?c=d&e:f@g#h [i]%";
+        Assert.assertEquals("a/b%3Fc=d&e:f@g%23h%20%5Bi%5D%25", PercentCodec.encode(string, Component.PATH));
+        Assert.assertEquals("a/b?c=d&e:f@g%23h%20%5Bi%5D%25", PercentCodec.encode(string, Component.QUERY));
+        Assert.assertEquals("a/b?c=d&e:f@g%23h%20%5Bi%5D%25", PercentCodec.encode(string, Component.FRAGMENT));
+        Assert.assertEquals("a%2Fb%3Fc=d&e:f%40g%23h%20%5Bi%5D%25", PercentCodec.encode(string, Component.USER_INFO));
+        Assert.assertEquals(-1, PercentCodec.indexOfUnsafe("a/b", 0, 3, Component.PATH));
+        Assert.assertEquals(1, PercentCodec.indexOfUnsafe("a/b", 0, 3, Component.USER_INFO));
+        ByteBuffer buffer = PercentCodec.encode("/\u00e4 b", 0, 4, Component.PATH, ByteBuffer.allocate(16));
+        Assert.assertEquals("/%C3%A4%20b", new String(buffer.array(), 0, buffer.position()));
+    }
+
+    @Test public void normalize() { // Escapes normalized in already encoded text
+        try {
+            StringBuilder builder = new StringBuilder();
+            String string = "/%7e%2f%2F%zz%4 %C3%A4\u00e4";
+            PercentCodec.normalize(string, 0, string.length(), Component.PATH, builder);
+            Assert.assertEquals("/~%2F%2F%25zz%254%20%C3%A4%C3%A4", builder.toString());
+        } catch (IOException e) {
+            Assert.fail(e.getMessage());
+        }
+    }
+
+}
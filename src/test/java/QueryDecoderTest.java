@@ -0,0 +1,56 @@
+import java.nio.charset.Charset;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.jajja.arachne.exceptions.MalformedUriException;
+import com.jajja.arachne.net.QueryDecoder;
+import com.jajja.arachne.net.Url;
+
+public class QueryDecoderTest {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final Charset ISO_8859_1 = Charset.forName("ISO-8859-1");
+
+    @Test public void detect() { // UTF-8 until a run of bytes is not UTF-8
+        QueryDecoder decoder = new QueryDecoder(null, ISO_8859_1);
+        Assert.assertEquals("a b", decoder.decode("a+b", 0, 3));
+        Assert.assertNull(decoder.getCharset());
+        Assert.assertEquals("\u00e4\u00f6 \ud83d\ude00", decoder.decode("%C3%A4%c3%b6%20%F0%9F%98%80", 0, 27));
+        Assert.assertEquals(UTF_8, decoder.getCharset());
+        Assert.assertEquals("\u00e4\u00f6", decoder.decode("%E4%F6", 0, 6));
+        Assert.assertEquals(ISO_8859_1, decoder.getCharset());
+        Assert.assertEquals("\u00c3\u00a4", decoder.decode("%C3%A4", 0, 6));
+        decoder.reset();
+        Assert.assertEquals("\u00e4", decoder.decode("%C3%A4", 0, 6));
+        for (String invalid : new String[] { "%C0%80", "%ED%A0%80", "%F4%90%80%80", "%E2%82", "%80" }) {
+            decoder.reset();
+            decoder.decode(invalid, 0, invalid.length());
+            Assert.assertEquals(invalid, ISO_8859_1, decoder.getCharset());
+        }
+    }
+
+    @Test public void fixed() { // Given charsets and malformed escapes
+        QueryDecoder decoder = new QueryDecoder(UTF_8, ISO_8859_1);
+        Assert.assertEquals("%zz%4%\ufffd", decoder.decode("%zz%4%%E4", 0, 9));
+        Assert.assertEquals(UTF_8, decoder.getCharset());
+        decoder = QueryDecoder.forEncoding("windows-1252");
+        Assert.assertEquals("\u20ac", decoder.decode("x%80y", 1, 4));
+    }
+
+    @Test public void url() { // Detected charset reported by the URL
+        try {
+            Url url = new Url("http://www.example.com/?a=%E4%F6&b=%C3%A4&&c&");
+            Assert.assertEquals("\u00e4\u00f6", url.getParameterValue("a"));
+            Assert.assertEquals("\u00c3\u00a4", url.getParameterValue("b"));
+            Assert.assertEquals("ISO-8859-1", url.getEncoding());
+            Assert.assertEquals(4, url.getParameters().size());
+            url = new Url("http://www.example.com/?a=%C3%A4");
+            Assert.assertEquals("\u00e4", url.getParameterValue("a"));
+            Assert.assertEquals("detect", url.getEncoding());
+        } catch (MalformedUriException e) {
+            Assert.fail(e.getMessage());
+        }
+    }
+
+}
@@ -0,0 +1,87 @@
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.jajja.arachne.exceptions.MalformedUriException;
+import com.jajja.arachne.net.Canonicalizer;
+import com.jajja.arachne.net.Resolver;
+import com.jajja.arachne.net.Url;
+
+public class ResolverTest {
+
+    private static final String[][] EXAMPLES = { // RFC 3986 section 5.4
+        { "g:h", "g:h" },
+        { "g", "http://a/b/c/g" },
+        { "./g", "http://a/b/c/g" },
+        { "g/", "http://a/b/c/g/" },
+        { "/g", "http://a/g" },
+        { "//g", "http://g" },
+        { "?y", "http://a/b/c/d;p?y" },
+        { "g?y", "http://a/b/c/g?y" },
+        { "#s", "http://a/b/c/d;p?q#s" },
+        { "g#s", "http://a/b/c/g#s" },
+        { "g?y#s", "http://a/b/c/g?y#s" },
+        { ";x", "http://a/b/c/;x" },
+        { "g;x", "http://a/b/c/g;x" },
+        { "g;x?y#s", "http://a/b/c/g;x?y#s" },
+        { "", "http://a/b/c/d;p?q" },
+        { ".", "http://a/b/c/" },
+        { "./", "http://a/b/c/" },
+        { "..", "http://a/b/" },
+        { "../", "http://a/b/" },
+        { "../g", "http://a/b/g" },
+        { "../..", "http://a/" },
+        { "../../", "http://a/" },
+        { "../../g", "http://a/g" },
+        { "../../../g", "http://a/g" },
+        { "../../../../g", "http://a/g" },
+        { "/./g", "http://a/g" },
+        { "/../g", "http://a/g" },
+        { "g.", "http://a/b/c/g." },
+        { ".g", "http://a/b/c/.g" },
+        { "g..", "http://a/b/c/g.." },
+        { "..g", "http://a/b/c/..g" },
+        { "./../g", "http://a/b/g" },
+        { "./g/.", "http://a/b/c/g/" },
+        { "g/./h", "http://a/b/c/g/h" },
+        { "g/../h", "http://a/b/c/h" },
+        { "g;x=1/./y", "http://a/b/c/g;x=1/y" },
+        { "g;x=1/../y", "http://a/b/c/y" },
+        { "g?y/./x", "http://a/b/c/g?y/./x" },
+        { "g?y/../x", "http://a/b/c/g?y/../x" },
+        { "g#s/./x", "http://a/b/c/g#s/./x" },
+        { "g#s/../x", "http://a/b/c/g#s/../x" },
+        { "http:g", "http:g" },
+    };
+
+    @Test public void rfc3986() { // Normal and abnormal examples
+        try {
+            Resolver resolver = new Resolver(new Url("http://a/b/c/d;p?q"));
+            for (String[] example : EXAMPLES) {
+                Assert.assertEquals(example[0], example[1], resolver.resolve(example[0]));
+            }
+            Resolver dotted = new Resolver(new Url("http://a/b/./c/../d/e"));
+            Assert.assertEquals("http://a/b/d/g", dotted.resolve("g"));
+            Assert.assertEquals("http://a/b/g", dotted.resolve("../g"));
+            Assert.assertEquals("http://a/b/./c/../d/e?x", dotted.resolve("?x"));
+            Assert.assertEquals("http://a/g", new Resolver(new Url("http://a")).resolve("g"));
+        } catch (MalformedUriException e) {
+            Assert.fail(e.getMessage());
+        }
+    }
+
+    @Test public void canonical() { // Canonical forms and fingerprints of targets
+        try {
+            Resolver resolver = new Resolver(new Url("HTTP://WWW.Example.com:80/a/b?q"), new Canonicalizer(Canonicalizer.DEFAULT | Canonicalizer.REMOVE_FRAGMENT));
+            String[] references = { "c/%7ed", "../a/./c/~d#x", "//www.example.com/a/c/%7Ed", "http://www.example.com:80/a/c/~d?" };
+            for (String reference : references) {
+                Assert.assertEquals(reference, "http://www.example.com/a/c/~d", resolver.canonicalize(reference));
+                Assert.assertEquals(reference, new Url("http://www.example.com/a/c/~d").fingerprint(), resolver.fingerprint(reference));
+            }
+            Assert.assertEquals("http://www.example.com/a/b?q", resolver.canonicalize(""));
+            Assert.assertEquals("<http://www.example.com/a/b?r", resolver.canonicalize("?r", new StringBuilder("<")).toString());
+        } catch (MalformedUriException e) {
+            Assert.fail(e.getMessage());
+        }
+    }
+
+}
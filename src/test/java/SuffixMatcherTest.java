@@ -0,0 +1,47 @@
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.jajja.arachne.net.SuffixMatcher;
+
+public class SuffixMatcherTest {
+
+    @Test public void registered() { // Registered domains.
+        checkRegistered("WwW.example.COM", "example.com");
+        checkRegistered("a.b.c.cy", "b.c.cy");
+        checkRegistered("www.city.kobe.jp", "city.kobe.jp");
+        checkRegistered("baz.bar.foo.co.uk.", "foo.co.uk");
+        checkRegistered("co.uk", null);
+        checkRegistered("example.example", null);
+        checkRegistered(".example.com", null);
+    }
+
+    @Test public void subleased() { // Subleased domains.
+        SuffixMatcher matcher = new SuffixMatcher();
+        String name = "baz.foo.blogspot.com";
+        Assert.assertTrue(matcher.match(name));
+        Assert.assertEquals("blogspot.com", name.substring(matcher.getIcannRegisteredStart(), matcher.getEnd()));
+        Assert.assertEquals("foo.blogspot.com", name.substring(matcher.getSubleasedStart(), matcher.getEnd()));
+        Assert.assertEquals("blogspot.com", name.substring(matcher.getRegisteredSuffixStart(), matcher.getEnd()));
+        Assert.assertTrue(matcher.match("www.blogspot.com"));
+        Assert.assertFalse(matcher.isSubleased());
+    }
+
+    @Test public void range() { // Host name in a larger buffer.
+        SuffixMatcher matcher = new SuffixMatcher();
+        byte[] bytes = "GET http://www.example.co.uk/ HTTP/1.1".getBytes();
+        Assert.assertTrue(matcher.match(bytes, 11, 28));
+        Assert.assertEquals(15, matcher.getRegisteredStart());
+        Assert.assertEquals(23, matcher.getRegisteredSuffixStart());
+        Assert.assertEquals(28, matcher.getEnd());
+    }
+
+    private static void checkRegistered(String name, String registered) {
+        SuffixMatcher matcher = new SuffixMatcher();
+        if (matcher.match(name) && matcher.isRegistered()) {
+            Assert.assertEquals(registered, name.substring(matcher.getRegisteredStart(), matcher.getEnd()).toLowerCase());
+        } else {
+            Assert.assertNull(registered);
+        }
+    }
+
+}